@@ -0,0 +1,266 @@
+package iwhr.swmm.swmmtools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author fww
+ * Read several element/variable series from the SWMM binary OUT file in one sequential pass
+ */
+public class BatchReadResult {
+
+    private static final int MAGIC_NUMBER = 516114522;
+    private static final int RECORD_SIZE = 4;
+
+    // Reporting variable order in the OUT file, see SWMM5 interfacing guide
+    private static final String[] SUBCATCH_VARIABLES = {"Rainfall", "SnowDepth", "Evaporation", "Infiltration", "Runoff", "GwFlow", "GwElev", "SoilMoisture"};
+    private static final String[] NODE_VARIABLES = {"Depth", "Head", "Volume", "LateralInflow", "TotalInflow", "Flooding"};
+    private static final String[] LINK_VARIABLES = {"Flow", "Depth", "Velocity", "Volume", "Capacity"};
+    private static final String[] SYSTEM_VARIABLES = {"Temperature", "Rainfall", "SnowDepth", "Losses", "Runoff",
+            "DryWeatherInflow", "GroundwaterInflow", "RdiiInflow", "DirectInflow", "LateralInflow",
+            "Flooding", "Outflow", "Storage", "Evaporation", "PotentialEvaporation"};
+
+    /**
+     * Element ID of the system-wide series, e.g. SYSTEM/Flooding for the total flooding rate
+     */
+    public static final String SYSTEM = "SYSTEM";
+
+    /**
+     * Read one series, kept for callers that only need a single element/variable
+     */
+    public static double[] readOutFile(File swmmFile, String id, String variable) throws IOException {
+        return readOutFile(swmmFile, new String[]{id}, new String[]{variable})[0];
+    }
+
+    /**
+     * Read all requested series at once.
+     *
+     * @param swmmFile  SWMM input file, the OUT file is expected beside it with the same name
+     * @param ids       element IDs (node, link or subcatchment), or SYSTEM for system-wide series
+     * @param variables variable names, e.g. Head, TotalInflow, Volume, Flow, or Flooding of SYSTEM
+     * @return one series per requested (id, variable) pair, in request order
+     */
+    public static double[][] readOutFile(File swmmFile, String[] ids, String[] variables) throws IOException {
+        if (ids.length != variables.length) {
+            throw new IllegalArgumentException("ids and variables must have the same length");
+        }
+        File outFile = outFileOf(swmmFile);
+        try (RandomAccessFile raf = new RandomAccessFile(outFile, "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return read(buffer, ids, variables, outFile);
+            } finally {
+                // Release the mapping right away, otherwise SWMM cannot overwrite the OUT file on Windows
+                unmap(buffer);
+            }
+        }
+    }
+
+    /**
+     * Read the requested series into a SeriesStore whose time step is the OUT file's report step
+     */
+    public static SeriesStore readStore(File swmmFile, SeriesKey[] keys) throws IOException {
+        double[][] series = readOutFile(swmmFile, SeriesKey.elements(keys), SeriesKey.variables(keys));
+        return SeriesStore.of(keys, series, readReportStep(swmmFile));
+    }
+
+    /**
+     * Report step of the OUT file in seconds
+     */
+    public static int readReportStep(File swmmFile) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(outFileOf(swmmFile), "r");
+             FileChannel channel = raf.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                return new Header(buffer).reportStep;
+            } finally {
+                unmap(buffer);
+            }
+        }
+    }
+
+    public static File outFileOf(File swmmFile) {
+        String name = swmmFile.getName();
+        int dot = name.lastIndexOf('.');
+        String base = dot < 0 ? name : name.substring(0, dot);
+        return new File(swmmFile.getParentFile(), base + ".out");
+    }
+
+    private static double[][] read(ByteBuffer buffer, String[] ids, String[] variables, File outFile) throws IOException {
+        Header header = new Header(buffer);
+
+        // Offset of each requested value inside one reporting period, after the period's date stamp
+        int[] offsets = new int[ids.length];
+        for (int k = 0; k < ids.length; k++) {
+            offsets[k] = header.offsetOf(ids[k], variables[k], outFile);
+        }
+
+        int periods = header.periods;
+        double[][] series = new double[ids.length][periods];
+        long position = header.outputStart;
+        for (int t = 0; t < periods; t++) {
+            int base = (int) position + 8;
+            for (int k = 0; k < offsets.length; k++) {
+                series[k][t] = buffer.getFloat(base + offsets[k]);
+            }
+            position += header.bytesPerPeriod;
+        }
+        return series;
+    }
+
+    private static final class Header {
+        final int subcatchCount;
+        final int nodeCount;
+        final int linkCount;
+        final int subcatchVars;
+        final int nodeVars;
+        final int linkVars;
+        final int systemVars;
+        final int reportStep;
+        final int periods;
+        final long outputStart;
+        final long bytesPerPeriod;
+        final Map<String, Integer> subcatchIndex;
+        final Map<String, Integer> nodeIndex;
+        final Map<String, Integer> linkIndex;
+
+        Header(ByteBuffer buffer) throws IOException {
+            int size = buffer.limit();
+            if (size < 14 * RECORD_SIZE || buffer.getInt(0) != MAGIC_NUMBER || buffer.getInt(size - RECORD_SIZE) != MAGIC_NUMBER) {
+                throw new IOException("Not a complete SWMM OUT file");
+            }
+            int errorCode = buffer.getInt(size - 2 * RECORD_SIZE);
+            if (errorCode != 0) {
+                throw new IOException("SWMM run ended with error code " + errorCode);
+            }
+            periods = buffer.getInt(size - 3 * RECORD_SIZE);
+            outputStart = buffer.getInt(size - 4 * RECORD_SIZE) & 0xffffffffL;
+            long inputStart = buffer.getInt(size - 5 * RECORD_SIZE) & 0xffffffffL;
+            long idStart = buffer.getInt(size - 6 * RECORD_SIZE) & 0xffffffffL;
+
+            subcatchCount = buffer.getInt(3 * RECORD_SIZE);
+            nodeCount = buffer.getInt(4 * RECORD_SIZE);
+            linkCount = buffer.getInt(5 * RECORD_SIZE);
+            int pollutantCount = buffer.getInt(6 * RECORD_SIZE);
+
+            // Element ID names
+            buffer.position((int) idStart);
+            subcatchIndex = readNames(buffer, subcatchCount);
+            nodeIndex = readNames(buffer, nodeCount);
+            linkIndex = readNames(buffer, linkCount);
+
+            // Skip element properties to reach the reporting variable counts
+            buffer.position((int) inputStart);
+            int subcatchProps = buffer.getInt();
+            buffer.position(buffer.position() + (subcatchProps + subcatchCount * subcatchProps) * RECORD_SIZE);
+            int nodeProps = buffer.getInt();
+            buffer.position(buffer.position() + (nodeProps + nodeCount * nodeProps) * RECORD_SIZE);
+            int linkProps = buffer.getInt();
+            buffer.position(buffer.position() + (linkProps + linkCount * linkProps) * RECORD_SIZE);
+
+            subcatchVars = buffer.getInt();
+            buffer.position(buffer.position() + subcatchVars * RECORD_SIZE);
+            nodeVars = buffer.getInt();
+            buffer.position(buffer.position() + nodeVars * RECORD_SIZE);
+            linkVars = buffer.getInt();
+            buffer.position(buffer.position() + linkVars * RECORD_SIZE);
+            systemVars = buffer.getInt();
+            buffer.position(buffer.position() + systemVars * RECORD_SIZE);
+
+            buffer.getDouble(); // report start date
+            reportStep = buffer.getInt();
+
+            bytesPerPeriod = 8L + (long) RECORD_SIZE * (subcatchCount * subcatchVars + nodeCount * nodeVars
+                    + linkCount * linkVars + systemVars);
+            if (pollutantCount < 0 || outputStart + periods * bytesPerPeriod > size) {
+                throw new IOException("Corrupted SWMM OUT file header");
+            }
+        }
+
+        int offsetOf(String id, String variable, File outFile) throws IOException {
+            int nodeVar = indexOf(NODE_VARIABLES, variable);
+            int linkVar = indexOf(LINK_VARIABLES, variable);
+            int subcatchVar = indexOf(SUBCATCH_VARIABLES, variable);
+
+            // Depth and Volume exist for both nodes and links, nodes are looked up first
+            Integer node = nodeIndex.get(id);
+            if (node != null && nodeVar >= 0) {
+                return RECORD_SIZE * (subcatchCount * subcatchVars + node * nodeVars + nodeVar);
+            }
+            Integer link = linkIndex.get(id);
+            if (link != null && linkVar >= 0) {
+                return RECORD_SIZE * (subcatchCount * subcatchVars + nodeCount * nodeVars + link * linkVars + linkVar);
+            }
+            Integer subcatch = subcatchIndex.get(id);
+            if (subcatch != null && subcatchVar >= 0) {
+                return RECORD_SIZE * (subcatch * subcatchVars + subcatchVar);
+            }
+            int systemVar = indexOf(SYSTEM_VARIABLES, variable);
+            if (id.equals(SYSTEM) && systemVar >= 0 && systemVar < systemVars) {
+                return RECORD_SIZE * (subcatchCount * subcatchVars + nodeCount * nodeVars + linkCount * linkVars + systemVar);
+            }
+            throw new IOException("No result " + id + "/" + variable + " in " + outFile);
+        }
+    }
+
+    private static Map<String, Integer> readNames(ByteBuffer buffer, int count) {
+        Map<String, Integer> index = new HashMap<>(count * 2);
+        byte[] bytes = new byte[64];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.getInt();
+            if (length > bytes.length) {
+                bytes = new byte[length];
+            }
+            buffer.get(bytes, 0, length);
+            index.put(new String(bytes, 0, length, StandardCharsets.UTF_8), i);
+        }
+        return index;
+    }
+
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            // Java 9+
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (NoSuchMethodException e) {
+            try {
+                // Java 8
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner != null) {
+                    cleaner.getClass().getMethod("clean").invoke(cleaner);
+                }
+            } catch (Exception ignored) {
+                // The mapping is released when the buffer is garbage collected
+            }
+        } catch (Exception ignored) {
+            // The mapping is released when the buffer is garbage collected
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package iwhr.swmm.optModel;
+
+import iwhr.swmm.util.EntropyWeight;
+
+import java.util.Arrays;
+
+/**
+ * @author fww
+ * Strategies for picking the applied gate schedule from a Pareto front. Objectives are
+ * minimized and min-max normalized per objective before selection.
+ */
+public enum CompromiseSelection {
+
+    /**
+     * Knee point: the solution farthest below the hyperplane through the normalized
+     * extreme points, i.e. the one with the smallest sum of normalized objectives
+     */
+    KNEE_POINT {
+        @Override
+        double[] weights(double[][] normalized) {
+            double[] weights = new double[normalized[0].length];
+            Arrays.fill(weights, 1.0);
+            return weights;
+        }
+    },
+
+    /**
+     * Weighted sum of normalized objectives with UFHWS entropy weights, objectives that
+     * discriminate more between the candidates weigh more
+     */
+    ENTROPY_WEIGHT {
+        @Override
+        double[] weights(double[][] normalized) {
+            // Shift away from zero so that every candidate contributes to the entropy
+            double[][] shifted = new double[normalized.length][];
+            for (int i = 0; i < normalized.length; i++) {
+                shifted[i] = new double[normalized[i].length];
+                for (int k = 0; k < normalized[i].length; k++) {
+                    shifted[i][k] = normalized[i][k] + 1e-6;
+                }
+            }
+            double[] weights = EntropyWeight.entropyWeight(shifted);
+            for (int k = 0; k < weights.length; k++) {
+                if (Double.isNaN(weights[k])) {
+                    // All objectives constant across the front
+                    Arrays.fill(weights, 1.0);
+                    break;
+                }
+            }
+            return weights;
+        }
+    };
+
+    abstract double[] weights(double[][] normalized);
+
+    /**
+     * Index of the selected solution
+     */
+    public int select(double[][] objectives) {
+        if (objectives.length == 1) {
+            return 0;
+        }
+        double[][] normalized = normalize(objectives);
+        double[] weights = weights(normalized);
+        int best = 0;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < normalized.length; i++) {
+            double score = 0;
+            for (int k = 0; k < weights.length; k++) {
+                score += weights[k] * normalized[i][k];
+            }
+            if (score < bestScore) {
+                bestScore = score;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    public static CompromiseSelection of(String name) {
+        switch (name) {
+            case "knee":
+                return KNEE_POINT;
+            case "entropy":
+                return ENTROPY_WEIGHT;
+            default:
+                return valueOf(name);
+        }
+    }
+
+    private static double[][] normalize(double[][] objectives) {
+        int m = objectives[0].length;
+        double[] min = new double[m];
+        double[] max = new double[m];
+        for (int k = 0; k < m; k++) {
+            min[k] = Double.POSITIVE_INFINITY;
+            max[k] = Double.NEGATIVE_INFINITY;
+            for (double[] objective : objectives) {
+                min[k] = Math.min(min[k], objective[k]);
+                max[k] = Math.max(max[k], objective[k]);
+            }
+        }
+        double[][] normalized = new double[objectives.length][m];
+        for (int i = 0; i < objectives.length; i++) {
+            for (int k = 0; k < m; k++) {
+                double range = max[k] - min[k];
+                normalized[i][k] = range > 0 ? (objectives[i][k] - min[k]) / range : 0;
+            }
+        }
+        return normalized;
+    }
+}
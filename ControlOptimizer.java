@@ -0,0 +1,49 @@
+package iwhr.swmm.optModel;
+
+import iwhr.swmm.util.CurveData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * @author fww
+ * Strategy that computes the gate schedule of one MPC step from the prediction results
+ */
+public interface ControlOptimizer {
+
+    /**
+     * @param scenarios prediction results, one dataset per rainfall scenario
+     */
+    ControlResult optimize(CurveData curveData, int[] parameters, List<ArrayList<double[]>> scenarios) throws IOException;
+
+    /**
+     * Optimizer by name, as set with -Dmpc.optimizer: moea | ga | hybrid | hybrid-ga (default moea).
+     * The hybrid variants refine the best candidates locally, with config's refinement or BOBYQA
+     * on the final result when none is configured (see OptConfig.fromSystemProperties).
+     *
+     * @param priority optimized objective of the single-objective GA, asked for once per step
+     */
+    static ControlOptimizer of(String name, OptConfig config, IntSupplier priority) {
+        switch (name) {
+            case "moea":
+                return new MoeaOptimizer(config);
+            case "ga":
+                return new GaOptimizer(config, priority);
+            case "hybrid":
+                return new MoeaOptimizer(hybrid(config));
+            case "hybrid-ga":
+                return new GaOptimizer(hybrid(config), priority);
+            default:
+                throw new IllegalArgumentException("Unknown optimizer: " + name);
+        }
+    }
+
+    static OptConfig hybrid(OptConfig config) {
+        if (config.getRefinement() == null) {
+            config.setRefinement(new LocalRefinement(LocalRefinement.Method.BOBYQA, 200, 3, 0));
+        }
+        return config;
+    }
+}
@@ -0,0 +1,53 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Maps the optimizer's genotype to the full gate schedule jdhFitness evaluates. Schedules are
+ * gate-major: the setting of gate g at decision step k is schedule[g * steps + k].
+ */
+public interface ControlParameterization {
+
+    /**
+     * Number of genes the optimizer works on
+     */
+    int genotypeLength();
+
+    /**
+     * Full schedule of gates * steps settings for a genotype
+     */
+    double[] expand(double[] genotype);
+
+    /**
+     * Genotype approximating a full schedule, e.g. to seed the optimizer with a previous solution
+     */
+    double[] compress(double[] schedule);
+
+    /**
+     * Parameterization from system properties:
+     * opt.control = full | blocking:m (m free moves, the last one held) | linear:k (k knots per gate),
+     * default full; opt.rateLimit = largest change of a setting between decision steps, default none
+     */
+    static ControlParameterization fromSystemProperties(int gates, int steps) {
+        ControlParameterization control = of(System.getProperty("opt.control", "full"), gates, steps);
+        String rateLimit = System.getProperty("opt.rateLimit");
+        return rateLimit == null ? control : new RateLimit(control, gates, Double.parseDouble(rateLimit));
+    }
+
+    /**
+     * Parse full, blocking:m or linear:k
+     */
+    static ControlParameterization of(String value, int gates, int steps) {
+        int colon = value.indexOf(':');
+        String kind = colon < 0 ? value : value.substring(0, colon);
+        switch (kind) {
+            case "full":
+                return new FullSchedule(gates, steps);
+            case "blocking":
+                return MoveBlocking.controlHorizon(gates, steps, Integer.parseInt(value.substring(colon + 1)));
+            case "linear":
+                return new PiecewiseLinear(gates, steps, Integer.parseInt(value.substring(colon + 1)));
+            default:
+                throw new IllegalArgumentException("Unknown control parameterization: " + value);
+        }
+    }
+}
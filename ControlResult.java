@@ -0,0 +1,46 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Gate schedule chosen by a ControlOptimizer for one MPC step
+ */
+public class ControlResult {
+
+    private final double[] schedule;
+    private final long generations;
+    private final Termination termination;
+    private final long evaluations;
+
+    public ControlResult(double[] schedule, long generations, Termination termination, long evaluations) {
+        this.schedule = schedule;
+        this.generations = generations;
+        this.termination = termination;
+        this.evaluations = evaluations;
+    }
+
+    /**
+     * Full gate-major schedule, gate openings in meters
+     */
+    public double[] getSchedule() {
+        return schedule;
+    }
+
+    public long getGenerations() {
+        return generations;
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * False when the deadline or the generation limit cut the run off
+     */
+    public boolean isConverged() {
+        return termination == Termination.CONVERGED;
+    }
+}
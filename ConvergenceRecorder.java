@@ -0,0 +1,328 @@
+package iwhr.swmm.optModel;
+
+import io.jenetics.Chromosome;
+import io.jenetics.NumericGene;
+import io.jenetics.Phenotype;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.util.ISeq;
+import iwhr.swmm.util.RollingFileWriter;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author fww
+ * Convergence telemetry of the optimizer runs: per generation the min, mean and max of each
+ * objective over the population, the genotype diversity and the last hypervolume, kept in
+ * preallocated primitive arrays used as a ring buffer over the latest generations of a run.
+ * Recording a generation allocates nothing. Optionally every dumpEvery-th population is written
+ * to a file on a background thread; samples are dropped rather than slowing down the run when
+ * the writer falls behind. Records one run at a time, from the thread that drives the evolution stream.
+ */
+public class ConvergenceRecorder implements Closeable {
+    protected static Logger logger = LogManager.getLogger(ConvergenceRecorder.class);
+
+    /**
+     * Reads objective k of a fitness value
+     */
+    public interface Objectives<C> {
+        double get(C fitness, int k);
+    }
+
+    private final int capacity;
+    private final int maxObjectives;
+    private final long[] generation;
+    // Objective statistics at [slot * maxObjectives + k]
+    private final double[] min;
+    private final double[] mean;
+    private final double[] max;
+    private final double[] diversity;
+    private final double[] hypervolume;
+
+    private int objectives;
+    private long recorded;
+    private long run;
+    // Per-gene running sums of the diversity and the allele ranges of the run
+    private double[] geneSum = new double[0];
+    private double[] geneSquares = new double[0];
+    private double[] geneMin = new double[0];
+    private double[] geneScale = new double[0];
+
+    private final RollingFileWriter dump;
+    private final int dumpEvery;
+    private final ThreadPoolExecutor writer;
+    private final LongAdder droppedDumps = new LongAdder();
+
+    /**
+     * Recorder without population dumps
+     *
+     * @param capacity      latest generations kept per run
+     * @param maxObjectives objectives of the largest problem recorded
+     */
+    public ConvergenceRecorder(int capacity, int maxObjectives) {
+        this(capacity, maxObjectives, null, 0);
+    }
+
+    /**
+     * @param dump      file receiving the sampled populations, null for none
+     * @param dumpEvery generations between two population samples
+     */
+    public ConvergenceRecorder(int capacity, int maxObjectives, RollingFileWriter dump, int dumpEvery) {
+        if (capacity <= 0 || maxObjectives <= 0) {
+            throw new IllegalArgumentException("capacity and maxObjectives must be positive");
+        }
+        this.capacity = capacity;
+        this.maxObjectives = maxObjectives;
+        this.generation = new long[capacity];
+        this.min = new double[capacity * maxObjectives];
+        this.mean = new double[capacity * maxObjectives];
+        this.max = new double[capacity * maxObjectives];
+        this.diversity = new double[capacity];
+        this.hypervolume = new double[capacity];
+        this.dump = dump;
+        this.dumpEvery = Math.max(dumpEvery, 1);
+        this.writer = dump == null ? null : new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(4), r -> {
+                    Thread thread = new Thread(r, "convergence-dump");
+                    thread.setDaemon(true);
+                    return thread;
+                }, (r, executor) -> droppedDumps.increment());
+    }
+
+    /**
+     * Start recording a new run, the previous run's generations are discarded
+     */
+    public void start(int objectives) {
+        if (objectives > maxObjectives) {
+            throw new IllegalArgumentException(objectives + " objectives, at most " + maxObjectives + " recorded");
+        }
+        this.objectives = objectives;
+        recorded = 0;
+        run++;
+    }
+
+    /**
+     * Record one generation
+     *
+     * @param hypervolume last computed hypervolume of the run, NaN for single-objective runs
+     */
+    public <G extends NumericGene<?, G>, C extends Comparable<? super C>> void record(EvolutionResult<G, C> result, Objectives<C> reader, double hypervolume) {
+        ISeq<Phenotype<G, C>> population = result.population();
+        int size = population.size();
+        int slot = (int) (recorded % capacity);
+        int base = slot * maxObjectives;
+        for (int k = 0; k < objectives; k++) {
+            min[base + k] = Double.POSITIVE_INFINITY;
+            max[base + k] = Double.NEGATIVE_INFINITY;
+            mean[base + k] = 0;
+        }
+        for (int i = 0; i < size; i++) {
+            Phenotype<G, C> pt = population.get(i);
+            C fitness = pt.fitness();
+            for (int k = 0; k < objectives; k++) {
+                double value = reader.get(fitness, k);
+                min[base + k] = Math.min(min[base + k], value);
+                max[base + k] = Math.max(max[base + k], value);
+                mean[base + k] += value;
+            }
+        }
+        for (int k = 0; k < objectives; k++) {
+            mean[base + k] /= size;
+        }
+        generation[slot] = result.generation();
+        diversity[slot] = diversity(population);
+        this.hypervolume[slot] = hypervolume;
+        recorded++;
+
+        if (dump != null && result.generation() % dumpEvery == 0) {
+            dump(population, reader, result.generation());
+        }
+    }
+
+    /**
+     * Mean standard deviation of the genes over the population, each gene scaled to its allele range
+     */
+    private <G extends NumericGene<?, G>, C extends Comparable<? super C>> double diversity(ISeq<Phenotype<G, C>> population) {
+        int size = population.size();
+        if (size == 0) {
+            return 0;
+        }
+        Chromosome<G> first = population.get(0).genotype().chromosome();
+        int length = first.length();
+        boolean resized = geneSum.length != length;
+        if (resized) {
+            geneSum = new double[length];
+            geneSquares = new double[length];
+            geneMin = new double[length];
+            geneScale = new double[length];
+        } else {
+            Arrays.fill(geneSum, 0);
+            Arrays.fill(geneSquares, 0);
+        }
+        if (resized || recorded == 0) {
+            // Allele ranges are fixed for a run, read them once rather than boxing them every generation
+            for (int j = 0; j < length; j++) {
+                G gene = first.get(j);
+                double range = gene.max().doubleValue() - gene.min().doubleValue();
+                geneMin[j] = gene.min().doubleValue();
+                geneScale[j] = range > 0 ? 1 / range : 0;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            Chromosome<G> chromosome = population.get(i).genotype().chromosome();
+            for (int j = 0; j < length; j++) {
+                double x = (chromosome.get(j).doubleValue() - geneMin[j]) * geneScale[j];
+                geneSum[j] += x;
+                geneSquares[j] += x * x;
+            }
+        }
+        double total = 0;
+        for (int j = 0; j < length; j++) {
+            double m = geneSum[j] / size;
+            total += Math.sqrt(Math.max(geneSquares[j] / size - m * m, 0));
+        }
+        return total / length;
+    }
+
+    private <G extends NumericGene<?, G>, C extends Comparable<? super C>> void dump(ISeq<Phenotype<G, C>> population, Objectives<C> reader, long gen) {
+        // The only allocation: a copy of the sampled objectives, formatted on the writer thread
+        int size = population.size();
+        int m = objectives;
+        double[] values = new double[size * m];
+        for (int i = 0; i < size; i++) {
+            C fitness = population.get(i).fitness();
+            for (int k = 0; k < m; k++) {
+                values[i * m + k] = reader.get(fitness, k);
+            }
+        }
+        long sampledRun = run;
+        writer.execute(() -> {
+            StringBuilder sb = new StringBuilder(size * m * 12);
+            for (int i = 0; i < size; i++) {
+                if (i > 0) {
+                    sb.append('\n');
+                }
+                sb.append(sampledRun).append(',').append(gen).append(',').append(i);
+                for (int k = 0; k < m; k++) {
+                    sb.append(',').append(values[i * m + k]);
+                }
+            }
+            try {
+                dump.writeLine(sb.toString());
+            } catch (IOException e) {
+                logger.warn("Cannot write population sample to " + dump.getFile() + ": " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Generations held of the current run, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(recorded, capacity);
+    }
+
+    /**
+     * Generations recorded in the current run, including those no longer held
+     */
+    public long getRecorded() {
+        return recorded;
+    }
+
+    public int getObjectives() {
+        return objectives;
+    }
+
+    public long getDroppedDumps() {
+        return droppedDumps.sum();
+    }
+
+    /**
+     * Generation number of the i-th held generation, 0 is the oldest
+     */
+    public long generation(int i) {
+        return generation[slot(i)];
+    }
+
+    public double min(int i, int k) {
+        return min[slot(i) * maxObjectives + objective(k)];
+    }
+
+    public double mean(int i, int k) {
+        return mean[slot(i) * maxObjectives + objective(k)];
+    }
+
+    public double max(int i, int k) {
+        return max[slot(i) * maxObjectives + objective(k)];
+    }
+
+    public double diversity(int i) {
+        return diversity[slot(i)];
+    }
+
+    public double hypervolume(int i) {
+        return hypervolume[slot(i)];
+    }
+
+    private int slot(int i) {
+        int size = size();
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size);
+        }
+        return (int) ((recorded - size + i) % capacity);
+    }
+
+    private int objective(int k) {
+        if (k < 0 || k >= objectives) {
+            throw new IndexOutOfBoundsException("objective " + k + " of " + objectives);
+        }
+        return k;
+    }
+
+    /**
+     * Last generation's best values, diversity and hypervolume, for the run's log line
+     */
+    public String summary() {
+        int size = size();
+        if (size == 0) {
+            return "no generations recorded";
+        }
+        int last = size - 1;
+        StringBuilder sb = new StringBuilder("generation ").append(generation(last)).append(", min");
+        for (int k = 0; k < objectives; k++) {
+            sb.append(' ').append(String.format(Locale.ROOT, "%.6g", min(last, k)));
+        }
+        sb.append(String.format(Locale.ROOT, ", diversity %.4f (first held %.4f)", diversity(last), diversity(0)));
+        if (!Double.isNaN(hypervolume(last))) {
+            sb.append(String.format(Locale.ROOT, ", hypervolume %.6g", hypervolume(last)));
+        }
+        if (getDroppedDumps() > 0) {
+            sb.append(", dropped population samples ").append(getDroppedDumps());
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the queued population samples and close the dump file
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.shutdown();
+            try {
+                writer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dump.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package iwhr.swmm.optModel;
+
+import io.jenetics.engine.EvolutionResult;
+
+import java.util.function.Predicate;
+
+/**
+ * @author fww
+ * Evolution stream limit for a wall-clock budget. A generation is only started when the longest
+ * generation so far still fits before the deadline, so the run ends in time instead of one
+ * generation late. The budget starts with the constructor, a new instance is needed for every run.
+ */
+public class DeadlineLimit implements Predicate<EvolutionResult<?, ?>> {
+
+    private final long deadline;
+    private long previous;
+    private long longestGeneration;
+    private boolean reached;
+
+    /**
+     * @param budgetMillis wall-clock budget of the run, 0 or less for no limit
+     */
+    public DeadlineLimit(long budgetMillis) {
+        this.previous = System.nanoTime();
+        this.deadline = budgetMillis > 0 ? previous + budgetMillis * 1_000_000L : Long.MAX_VALUE;
+    }
+
+    /**
+     * True once the run was stopped by the deadline
+     */
+    public boolean isReached() {
+        return reached;
+    }
+
+    /**
+     * Whether the time left still holds the given number of generations as long as the longest so
+     * far, to decide on extra work within a generation; always true without a budget
+     */
+    public boolean fits(double generations) {
+        return deadline == Long.MAX_VALUE || deadline - System.nanoTime() >= generations * longestGeneration;
+    }
+
+    @Override
+    public boolean test(EvolutionResult<?, ?> result) {
+        if (deadline == Long.MAX_VALUE) {
+            return true;
+        }
+        long now = System.nanoTime();
+        longestGeneration = Math.max(longestGeneration, now - previous);
+        previous = now;
+        if (deadline - now < longestGeneration) {
+            reached = true;
+            return false;
+        }
+        return true;
+    }
+}
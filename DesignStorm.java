@@ -0,0 +1,112 @@
+package iwhr.swmm.util;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author fww
+ * Chicago design storm (Keifer and Chu) from a storm intensity formula
+ * i = A1 (1 + C lg P) / (t + b)^n in mm/min, with P the return period in years and t the duration
+ * in minutes. Every duration around the peak holds the depth of the formula; the step depths are
+ * taken from the exact cumulative curve, so the hyetograph keeps the total depth at any step length.
+ */
+public class DesignStorm {
+
+    private final double a1;
+    private final double c;
+    private final double b;
+    private final double n;
+
+    /**
+     * @param a1 rain intensity parameter in mm/min
+     * @param c  return period coefficient
+     * @param b  duration offset in minutes
+     * @param n  duration exponent
+     */
+    public DesignStorm(double a1, double c, double b, double n) {
+        this.a1 = a1;
+        this.c = c;
+        this.b = b;
+        this.n = n;
+    }
+
+    /**
+     * Formula from system properties: storm.a1, storm.c, storm.b, storm.n. The defaults are only an
+     * example of the usual magnitude of Chinese city formulas; use the local formula for real studies.
+     */
+    public static DesignStorm fromSystemProperties() {
+        return new DesignStorm(
+                Double.parseDouble(System.getProperty("storm.a1", "12.0")),
+                Double.parseDouble(System.getProperty("storm.c", "0.8")),
+                Double.parseDouble(System.getProperty("storm.b", "10.0")),
+                Double.parseDouble(System.getProperty("storm.n", "0.7")));
+    }
+
+    /**
+     * Mean intensity over duration minutes in mm/min
+     */
+    public double intensity(double returnPeriod, double duration) {
+        return a1 * (1 + c * Math.log10(returnPeriod)) / Math.pow(duration + b, n);
+    }
+
+    /**
+     * Intensity of each step in mm/h
+     *
+     * @param duration    storm duration in minutes
+     * @param peakRatio   position of the peak as a share of the duration, 0.3 to 0.5 is typical
+     * @param stepMinutes length of one step, a divisor of the duration
+     */
+    public double[] hyetograph(double returnPeriod, int duration, double peakRatio, int stepMinutes) {
+        if (duration % stepMinutes != 0) {
+            throw new IllegalArgumentException("Step " + stepMinutes + " min does not divide the duration " + duration + " min");
+        }
+        if (peakRatio <= 0 || peakRatio >= 1) {
+            throw new IllegalArgumentException("Peak ratio must lie between 0 and 1");
+        }
+        double a = a1 * (1 + c * Math.log10(returnPeriod));
+        double[] intensities = new double[duration / stepMinutes];
+        double previous = 0;
+        for (int k = 0; k < intensities.length; k++) {
+            double next = cumulative(a, (k + 1) * stepMinutes, duration, peakRatio);
+            intensities[k] = (next - previous) / stepMinutes * 60;
+            previous = next;
+        }
+        return intensities;
+    }
+
+    /**
+     * Depth in mm from the storm start to minute t
+     */
+    private double cumulative(double a, double t, double duration, double r) {
+        double peak = r * duration;
+        if (t <= peak) {
+            return r * (depth(a, duration) - depth(a, (peak - t) / r));
+        }
+        return r * depth(a, duration) + (1 - r) * depth(a, (t - peak) / (1 - r));
+    }
+
+    /**
+     * Depth of the formula over duration minutes
+     */
+    private double depth(double a, double duration) {
+        return a * duration / Math.pow(duration + b, n);
+    }
+
+    /**
+     * Rain gage time series entries "date time value" of a hyetograph starting at start, followed by
+     * a zero entry that ends the storm
+     */
+    public static List<String> timeSeries(double[] intensities, LocalDateTime start, int stepMinutes,
+                                          DateTimeFormatter format) {
+        List<String> entries = new ArrayList<>(intensities.length + 1);
+        for (int k = 0; k < intensities.length; k++) {
+            entries.add(format.format(start.plusMinutes((long) k * stepMinutes))
+                    + String.format(Locale.ROOT, " %.3f", intensities[k]));
+        }
+        entries.add(format.format(start.plusMinutes((long) intensities.length * stepMinutes)) + " 0");
+        return entries;
+    }
+}
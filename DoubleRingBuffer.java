@@ -0,0 +1,73 @@
+package iwhr.swmm.util;
+
+/**
+ * @author fww
+ * Fixed capacity ring buffer of primitive doubles, the oldest values are overwritten when full
+ */
+public class DoubleRingBuffer {
+
+    private final double[] values;
+    private long count;
+
+    public DoubleRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.values = new double[capacity];
+    }
+
+    public void add(double value) {
+        values[(int) (count % values.length)] = value;
+        count++;
+    }
+
+    /**
+     * Number of values held, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(count, values.length);
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    /**
+     * Values added since creation or the last clear, including overwritten ones
+     */
+    public long totalCount() {
+        return count;
+    }
+
+    /**
+     * i-th held value, 0 is the oldest
+     */
+    public double get(int i) {
+        if (i < 0 || i >= size()) {
+            throw new IndexOutOfBoundsException("index " + i + ", size " + size());
+        }
+        long first = count - size();
+        return values[(int) ((first + i) % values.length)];
+    }
+
+    public double last() {
+        return get(size() - 1);
+    }
+
+    /**
+     * Held values from oldest to newest
+     */
+    public double[] toArray() {
+        int size = size();
+        double[] result = new double[size];
+        int start = (int) ((count - size) % values.length);
+        int head = Math.min(size, values.length - start);
+        System.arraycopy(values, start, result, 0, head);
+        System.arraycopy(values, 0, result, head, size - head);
+        return result;
+    }
+
+    public void clear() {
+        count = 0;
+    }
+}
@@ -0,0 +1,167 @@
+package iwhr.swmm.util;
+
+import java.util.stream.IntStream;
+
+/**
+ * @author fww
+ * Running sums of the entropy weight method, so that weights can be updated as rows arrive
+ * without keeping or revisiting earlier rows. With p = x / S and S the column sum,
+ * sum(p ln p) = (sum(x ln x) - sum(x) ln S) / S over the positive x, so a column needs only
+ * S, n and the sums of x and x ln x of its positive values (of its negative values for a
+ * negative S, where the positive shares are those of the negative x). Not thread-safe; use one
+ * accumulator per source and merge them.
+ */
+public class EntropyAccumulator {
+
+    // Columns per parallel task: eight doubles fill one 64 byte cache line of a row
+    private static final int BLOCK = 8;
+    // Matrices with fewer values are accumulated on the calling thread
+    private static final long PARALLEL_THRESHOLD = 1 << 18;
+
+    private final int indicators;
+    private long rows;
+    private final double[] sum;
+    private final double[] positiveSum;
+    private final double[] positiveXLogX;
+    private final double[] negativeSum;
+    // Sum of x ln(-x) over the negative x
+    private final double[] negativeXLogX;
+
+    public EntropyAccumulator(int indicators) {
+        this.indicators = indicators;
+        this.sum = new double[indicators];
+        this.positiveSum = new double[indicators];
+        this.positiveXLogX = new double[indicators];
+        this.negativeSum = new double[indicators];
+        this.negativeXLogX = new double[indicators];
+    }
+
+    public int indicators() {
+        return indicators;
+    }
+
+    /**
+     * Rows added so far
+     */
+    public long rows() {
+        return rows;
+    }
+
+    /**
+     * Add one row of indicator values; only the first indicators() values are read
+     */
+    public void add(double[] row) {
+        for (int j = 0; j < indicators; j++) {
+            double x = row[j];
+            sum[j] += x;
+            if (x > 0) {
+                positiveSum[j] += x;
+                positiveXLogX[j] += x * Math.log(x);
+            } else if (x < 0) {
+                negativeSum[j] += x;
+                negativeXLogX[j] += x * Math.log(-x);
+            }
+        }
+        rows++;
+    }
+
+    /**
+     * Add all rows of a sample matrix, large matrices in parallel by blocks of columns.
+     * Each column is still summed in row order, so the result does not depend on the parallelism.
+     */
+    public void addAll(double[][] data) {
+        int blocks = (indicators + BLOCK - 1) / BLOCK;
+        IntStream columnBlocks = IntStream.range(0, blocks);
+        if (blocks > 1 && (long) data.length * indicators >= PARALLEL_THRESHOLD) {
+            columnBlocks = columnBlocks.parallel();
+        }
+        columnBlocks.forEach(b -> addColumns(data, b * BLOCK, Math.min(indicators, (b + 1) * BLOCK)));
+        rows += data.length;
+    }
+
+    private void addColumns(double[][] data, int from, int to) {
+        int width = to - from;
+        // Block-local sums, written back once so that tasks never write to shared cache lines in the loop
+        double[] s = new double[width];
+        double[] ps = new double[width];
+        double[] pl = new double[width];
+        double[] ns = new double[width];
+        double[] nl = new double[width];
+        for (double[] row : data) {
+            for (int k = 0; k < width; k++) {
+                double x = row[from + k];
+                s[k] += x;
+                if (x > 0) {
+                    ps[k] += x;
+                    pl[k] += x * Math.log(x);
+                } else if (x < 0) {
+                    ns[k] += x;
+                    nl[k] += x * Math.log(-x);
+                }
+            }
+        }
+        for (int k = 0; k < width; k++) {
+            sum[from + k] += s[k];
+            positiveSum[from + k] += ps[k];
+            positiveXLogX[from + k] += pl[k];
+            negativeSum[from + k] += ns[k];
+            negativeXLogX[from + k] += nl[k];
+        }
+    }
+
+    /**
+     * Add the rows of another accumulator over the same indicators
+     */
+    public void merge(EntropyAccumulator other) {
+        if (other.indicators != indicators) {
+            throw new IllegalArgumentException("Expected " + indicators + " indicators, got " + other.indicators);
+        }
+        for (int j = 0; j < indicators; j++) {
+            sum[j] += other.sum[j];
+            positiveSum[j] += other.positiveSum[j];
+            positiveXLogX[j] += other.positiveXLogX[j];
+            negativeSum[j] += other.negativeSum[j];
+            negativeXLogX[j] += other.negativeXLogX[j];
+        }
+        rows += other.rows;
+    }
+
+    /**
+     * Normalized entropy of each indicator over the rows added so far
+     */
+    public double[] entropy() {
+        double logN = Math.log(rows);
+        double[] entropy = new double[indicators];
+        for (int j = 0; j < indicators; j++) {
+            double s = sum[j];
+            double pLogP;
+            if (s > 0) {
+                pLogP = (positiveXLogX[j] - positiveSum[j] * Math.log(s)) / s;
+            } else if (s < 0) {
+                pLogP = (negativeXLogX[j] - negativeSum[j] * Math.log(-s)) / s;
+            } else {
+                // All-zero column: no positive shares; mixed signs summing to zero are undefined
+                pLogP = positiveSum[j] == 0 && negativeSum[j] == 0 ? 0 : Double.NaN;
+            }
+            entropy[j] = -pLogP / logN;
+        }
+        return entropy;
+    }
+
+    /**
+     * Entropy weights of the indicators over the rows added so far
+     */
+    public double[] weights() {
+        double[] entropy = entropy();
+        double[] weights = new double[indicators];
+        double diffSum = 0;
+        for (int j = 0; j < indicators; j++) {
+            weights[j] = 1 - entropy[j];
+            diffSum += weights[j];
+        }
+        for (int j = 0; j < indicators; j++) {
+            weights[j] /= diffSum;
+        }
+        return weights;
+    }
+}
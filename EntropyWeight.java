@@ -1,8 +1,10 @@
-import java.io.BufferedReader;
-import java.io.FileReader;
+package iwhr.swmm.util;
+
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 
 /**
  * @author fww
@@ -11,83 +13,51 @@ import java.util.List;
 
 public class EntropyWeight {
     
+    /**
+     * Entropy weights of the indicators (columns) of a sample matrix in one pass over the data,
+     * without a normalized copy; large matrices are processed in parallel by column blocks
+     */
     public static double[] entropyWeight(double[][] data) {
-        int n = data.length; // Number of samples
-        int m = data[0].length; // Number of indicators
-        
-        // Step 1: Data standardization - divide each column by its sum
-        double[][] normalizedData = new double[n][m];
-        double[] colSums = new double[m];
-        
-        // Calculate sum of each column
-        for (int j = 0; j < m; j++) {
-            colSums[j] = 0;
-            for (int i = 0; i < n; i++) {
-                colSums[j] += data[i][j];
-            }
-        }
-        
-        // Standardize data
-        for (int i = 0; i < n; i++) {
-            for (int j = 0; j < m; j++) {
-                normalizedData[i][j] = data[i][j] / colSums[j];
-            }
+        EntropyAccumulator accumulator = new EntropyAccumulator(data[0].length);
+        accumulator.addAll(data);
+        return accumulator.weights();
+    }
+
+    /**
+     * Entropy weights streamed from a whitespace separated text file with one sample per line
+     */
+    public static double[] entropyWeight(File file) throws IOException {
+        try (NumberTableReader reader = new NumberTableReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            return accumulate(reader, null).weights();
         }
-        
-        // Step 2: Calculate entropy
-        double[] entropy = new double[m];
-        for (int j = 0; j < m; j++) {
-            double sum = 0;
-            for (int i = 0; i < n; i++) {
-                if (normalizedData[i][j] > 0) { // Avoid log(0)
-                    sum += normalizedData[i][j] * Math.log(normalizedData[i][j]);
-                }
+    }
+
+    /**
+     * Add all rows of a reader to an accumulator, e.g. newly arrived records to the running sums
+     * of earlier ones; a null accumulator is created from the number of values of the first row
+     */
+    public static EntropyAccumulator accumulate(NumberTableReader reader, EntropyAccumulator accumulator) throws IOException {
+        int count;
+        while ((count = reader.nextRow()) >= 0) {
+            if (accumulator == null) {
+                accumulator = new EntropyAccumulator(count);
+            } else if (count != accumulator.indicators()) {
+                throw new IOException("Line " + reader.lineNumber() + " has " + count + " values, expected "
+                        + accumulator.indicators());
             }
-            entropy[j] = -sum / Math.log(n);
+            accumulator.add(reader.values());
         }
-        
-        // Step 3: Calculate difference coefficient
-        double[] diffCoeff = new double[m];
-        double diffSum = 0;
-        for (int j = 0; j < m; j++) {
-            diffCoeff[j] = 1 - entropy[j];
-            diffSum += diffCoeff[j];
+        if (accumulator == null) {
+            throw new IOException("No samples");
         }
-        
-        // Step 4: Calculate weights
-        double[] weights = new double[m];
-        for (int j = 0; j < m; j++) {
-            weights[j] = diffCoeff[j] / diffSum;
-        }
-        
-        return weights;
+        return accumulator;
     }
-    
+
     public static void main(String[] args) {
         try {
             // Read data file
-            BufferedReader reader = new BufferedReader(new FileReader("data.txt"));
-            List<double[]> dataList = new ArrayList<>();
-            String line;
-            
-            while ((line = reader.readLine()) != null) {
-                String[] values = line.trim().split("\\s+");
-                double[] row = new double[values.length];
-                for (int i = 0; i < values.length; i++) {
-                    row[i] = Double.parseDouble(values[i]);
-                }
-                dataList.add(row);
-            }
-            reader.close();
-            
-            // Convert to 2D array
-            double[][] data = new double[dataList.size()][];
-            for (int i = 0; i < dataList.size(); i++) {
-                data[i] = dataList.get(i);
-            }
-            
-            // Calculate weights
-            double[] weights = entropyWeight(data);
+            double[] weights = entropyWeight(new File("data.txt"));
             
             // Output results
             System.out.print("Weights: [");
@@ -0,0 +1,134 @@
+package iwhr.swmm.optModel;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author fww
+ * Bounded concurrent fitness cache keyed on gate-opening vectors quantized to the precision
+ * JdhMpc applies (0.01 of the 4.5 m full opening). A miss evaluates the snapped vector,
+ * so every cached value belongs exactly to its key; the evaluation is responsible for
+ * keeping snapped values inside the codec bounds. The cache holds results for one
+ * dataList only and must be cleared when the prediction changes.
+ */
+public class FitnessCache {
+
+    @FunctionalInterface
+    public interface Evaluation {
+        double[] apply(double[] x) throws Exception;
+    }
+
+    private static final int SEGMENTS = 16;
+
+    private final double step;
+    // Lock striping: each segment is an access-ordered LRU map with its own lock
+    private final Map<Key, double[]>[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize   maximum number of cached vectors, least recently used ones are evicted
+     * @param fullScale decision variable value that corresponds to a fully open gate
+     * @param levels    quantization levels of the full scale
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public FitnessCache(int maxSize, double fullScale, int levels) {
+        this.step = fullScale / levels;
+        final int segmentSize = Math.max(maxSize / SEGMENTS, 1);
+        segments = new Map[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, double[]> eldest) {
+                    return size() > segmentSize;
+                }
+            };
+        }
+    }
+
+    /**
+     * Cached fitness of x, evaluated on the quantized vector on a miss. Two threads missing
+     * the same key at once may both evaluate it.
+     */
+    public double[] get(double[] x, Evaluation evaluation) throws Exception {
+        int[] levels = new int[x.length];
+        for (int j = 0; j < x.length; j++) {
+            levels[j] = (int) Math.round(x[j] / step);
+        }
+        Key key = new Key(levels);
+        Map<Key, double[]> segment = segments[(key.hash & 0x7fffffff) % SEGMENTS];
+        double[] value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = evaluation.apply(snap(levels));
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+        return value;
+    }
+
+    public void clear() {
+        for (Map<Key, double[]> segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("fitness cache hits %d, misses %d, hit rate %.1f%%", getHits(), getMisses(), getHitRate() * 100);
+    }
+
+    private double[] snap(int[] levels) {
+        double[] x = new double[levels.length];
+        for (int j = 0; j < levels.length; j++) {
+            x[j] = levels[j] * step;
+        }
+        return x;
+    }
+
+    private static final class Key {
+        final int[] levels;
+        final int hash;
+
+        Key(int[] levels) {
+            this.levels = levels;
+            this.hash = Arrays.hashCode(levels);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(levels, ((Key) o).levels);
+        }
+    }
+}
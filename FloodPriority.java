@@ -0,0 +1,112 @@
+package iwhr.swmm.mpcModel;
+
+import iwhr.swmm.swmmtools.HydrographFeatures;
+import iwhr.swmm.swmmtools.SeriesKey;
+import iwhr.swmm.swmmtools.SeriesStore;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author fww
+ * Decides which tributary's flood is most urgent for a prediction. Each tributary is scored by
+ * the share of its flood volume in the available storage of its reservoir, the lead time of the
+ * flood relative to the reservoir level peak and the downstream risk of the reservoir, weighted
+ * as in PriorityConfig. Every series is scanned once per prediction, however many tributaries share it.
+ */
+public class FloodPriority {
+    protected static Logger logger = LogManager.getLogger(FloodPriority.class);
+
+    private final PriorityConfig config;
+
+    public FloodPriority(PriorityConfig config) {
+        if (config.getTributaries().isEmpty()) {
+            throw new IllegalArgumentException("No tributaries to prioritize");
+        }
+        this.config = config;
+    }
+
+    public PriorityConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Scores of all tributaries in configuration order
+     */
+    public double[] scores(SeriesStore prediction) {
+        List<PriorityConfig.Reservoir> reservoirs = config.getReservoirs();
+        List<PriorityConfig.Tributary> tributaries = config.getTributaries();
+
+        // Level features and risk term of each reservoir
+        Map<String, HydrographFeatures> levels = new HashMap<>(reservoirs.size() * 2);
+        Map<String, Double> risks = new HashMap<>(reservoirs.size() * 2);
+        double maxRisk = Double.NEGATIVE_INFINITY;
+        double minRisk = Double.POSITIVE_INFINITY;
+        for (PriorityConfig.Reservoir reservoir : reservoirs) {
+            HydrographFeatures level = HydrographFeatures.extract(prediction.series(reservoir.getLevel()), reservoir.getThreshold());
+            levels.put(reservoir.getName(), level);
+            double risk = level.exceeds() ? reservoir.getResilience() : 0;
+            risks.put(reservoir.getName(), risk);
+            maxRisk = Math.max(maxRisk, risk);
+            minRisk = Math.min(minRisk, risk);
+        }
+
+        Map<SeriesKey, HydrographFeatures> inflows = new HashMap<>(tributaries.size() * 2);
+        double[] scores = new double[tributaries.size()];
+        for (int i = 0; i < scores.length; i++) {
+            PriorityConfig.Tributary tributary = tributaries.get(i);
+            PriorityConfig.Reservoir reservoir = tributary.getReservoir();
+            HydrographFeatures inflow = inflows.computeIfAbsent(tributary.getInflow(),
+                    key -> HydrographFeatures.extract(prediction.series(key)));
+            HydrographFeatures level = levels.get(reservoir.getName());
+
+            // Tributary's share of the currently available storage capacity
+            double available = reservoir.getCapacity() - prediction.get(reservoir.getVolume(), 0);
+            if (available < 0) {
+                available = 0.00001;
+            }
+            double storage = inflow.getVolume() / available;
+
+            // Lead time of the flood to the reservoir, once the reservoir exceeds its threshold
+            double leadTime = level.exceeds() ? minutesToPeak(inflow) / minutesToPeak(level) : 0;
+
+            // Risk of the downstream area relative to the most endangered reservoir, none if all are alike
+            double risk = maxRisk > minRisk ? risks.get(reservoir.getName()) / maxRisk : 0;
+
+            scores[i] = config.getStorageWeight() * storage + config.getLeadTimeWeight() * leadTime
+                    + config.getRiskWeight() * risk;
+        }
+        return scores;
+    }
+
+    /**
+     * Number of the most urgent tributary starting from 1, the earlier one on a tie
+     */
+    public int priority(SeriesStore prediction) {
+        double[] scores = scores(prediction);
+        int best = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[best]) {
+                best = i;
+            }
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Tributary " + config.getTributaries().get(best).getName() + " first, scores " + Arrays.toString(scores));
+        }
+        return best + 1;
+    }
+
+    /**
+     * Minutes until the last peak, 0.01 for a peak at the start so that lead time ratios stay finite
+     */
+    private static double minutesToPeak(HydrographFeatures features) {
+        if (features.getPeakIndex() <= 0) {
+            return 0.01;
+        }
+        return features.getTimeToPeakSeconds() / 60;
+    }
+}
@@ -0,0 +1,29 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * One free setting per gate and decision step, the genotype is the schedule
+ */
+public class FullSchedule implements ControlParameterization {
+
+    private final int length;
+
+    public FullSchedule(int gates, int steps) {
+        this.length = gates * steps;
+    }
+
+    @Override
+    public int genotypeLength() {
+        return length;
+    }
+
+    @Override
+    public double[] expand(double[] genotype) {
+        return genotype.clone();
+    }
+
+    @Override
+    public double[] compress(double[] schedule) {
+        return schedule.clone();
+    }
+}
@@ -0,0 +1,33 @@
+package iwhr.swmm.optModel;
+
+import iwhr.swmm.util.CurveData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+/**
+ * @author fww
+ * Single-objective optimization with OptMethod.jdhGA on the objective of the tributary with the
+ * highest flood priority
+ */
+public class GaOptimizer implements ControlOptimizer {
+
+    private final OptConfig config;
+    private final IntSupplier priority;
+
+    /**
+     * @param priority 1, 2 or 3, asked for once per step
+     */
+    public GaOptimizer(OptConfig config, IntSupplier priority) {
+        this.config = config;
+        this.priority = priority;
+    }
+
+    @Override
+    public ControlResult optimize(CurveData curveData, int[] parameters, List<ArrayList<double[]>> scenarios) throws IOException {
+        GaResult result = OptMethod.jdhGA(curveData, parameters, scenarios, priority.getAsInt(), config);
+        return new ControlResult(result.getSchedule(), result.getGenerations(), result.getTermination(), result.getEvaluations());
+    }
+}
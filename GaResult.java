@@ -0,0 +1,58 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Best gate schedule of one single-objective GA run
+ */
+public class GaResult {
+
+    private final double[] schedule;
+    private final double fitness;
+    private final long generations;
+    private final Termination termination;
+    private final long evaluations;
+
+    public GaResult(double[] schedule, double fitness, long generations, Termination termination, long evaluations) {
+        this.schedule = schedule;
+        this.fitness = fitness;
+        this.generations = generations;
+        this.termination = termination;
+        this.evaluations = evaluations;
+    }
+
+    /**
+     * Decoded decision vector, gate openings in [0.1, 4.5]
+     */
+    public double[] getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * Value of the priority objective
+     */
+    public double getFitness() {
+        return fitness;
+    }
+
+    public long getGenerations() {
+        return generations;
+    }
+
+    /**
+     * jdhFitness evaluations of the run, without fitness cache hits and surrogate predictions
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    /**
+     * False when the deadline or the generation limit cut the run off
+     */
+    public boolean isConverged() {
+        return termination == Termination.CONVERGED;
+    }
+}
@@ -0,0 +1,61 @@
+package iwhr.swmm.swmmtools;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author fww
+ * SWMM hot start files chained across MPC steps: the feedback run of each control interval
+ * saves the model state at the interval's end, the prediction of the next step starts from it.
+ * Files are numbered in the order they are saved.
+ */
+public class HotStartChain {
+
+    private final File directory;
+
+    public HotStartChain(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create hot start directory " + directory);
+        }
+        this.directory = directory;
+    }
+
+    /**
+     * Hot start file of the i-th saved state
+     */
+    public File fileFor(int i) {
+        return new File(directory, String.format("state_%05d.hsf", i));
+    }
+
+    /**
+     * The i-th saved state, null when there is none (not saved yet or after a reset)
+     */
+    public File stateAt(int i) {
+        File file = fileFor(i);
+        return file.isFile() ? file : null;
+    }
+
+    /**
+     * Delete the states saved before the i-th, they are never read again
+     */
+    public void release(int i) {
+        File[] files = directory.listFiles((dir, name) -> name.matches("state_\\d+\\.hsf"));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            int index = Integer.parseInt(name.substring("state_".length(), name.length() - ".hsf".length()));
+            if (index < i && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Delete all saved states, the next prediction starts from the INP initial conditions
+     */
+    public void reset() {
+        release(Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,118 @@
+package iwhr.swmm.swmmtools;
+
+/**
+ * @author fww
+ * Flood features of one hydrograph or level series, all taken in a single pass over the values:
+ * peak, the last index of the peak, volume and how long a threshold is exceeded
+ */
+public final class HydrographFeatures {
+
+    private final double peak;
+    private final int peakIndex;
+    private final double volume;
+    private final double threshold;
+    private final int exceedanceSteps;
+    private final int firstExceedance;
+    private final double stepSeconds;
+
+    private HydrographFeatures(double peak, int peakIndex, double volume, double threshold,
+                               int exceedanceSteps, int firstExceedance, double stepSeconds) {
+        this.peak = peak;
+        this.peakIndex = peakIndex;
+        this.volume = volume;
+        this.threshold = threshold;
+        this.exceedanceSteps = exceedanceSteps;
+        this.firstExceedance = firstExceedance;
+        this.stepSeconds = stepSeconds;
+    }
+
+    /**
+     * Features of a series without a threshold, e.g. a tributary inflow
+     */
+    public static HydrographFeatures extract(SeriesView series) {
+        return extract(series, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @param threshold values above it count as exceedance, e.g. the warning level of a reservoir
+     */
+    public static HydrographFeatures extract(SeriesView series, double threshold) {
+        int length = series.length();
+        double peak = Double.NEGATIVE_INFINITY;
+        int peakIndex = -1;
+        double sum = 0;
+        int exceedanceSteps = 0;
+        int firstExceedance = -1;
+        for (int t = 0; t < length; t++) {
+            double value = series.get(t);
+            if (value >= peak) {
+                peak = value;
+                peakIndex = t;
+            }
+            sum += value;
+            if (value > threshold) {
+                if (firstExceedance < 0) {
+                    firstExceedance = t;
+                }
+                exceedanceSteps++;
+            }
+        }
+        double stepSeconds = series.stepSeconds();
+        return new HydrographFeatures(peak, peakIndex, sum * stepSeconds, threshold,
+                exceedanceSteps, firstExceedance, stepSeconds);
+    }
+
+    public double getPeak() {
+        return peak;
+    }
+
+    /**
+     * Index of the last occurrence of the peak, -1 for an empty series
+     */
+    public int getPeakIndex() {
+        return peakIndex;
+    }
+
+    public double getTimeToPeakSeconds() {
+        return peakIndex * stepSeconds;
+    }
+
+    /**
+     * Sum of the values times the step length, e.g. m3 of a flow in m3/s
+     */
+    public double getVolume() {
+        return volume;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Whether the peak lies above the threshold
+     */
+    public boolean exceeds() {
+        return peak > threshold;
+    }
+
+    public double getExceedanceSeconds() {
+        return exceedanceSteps * stepSeconds;
+    }
+
+    /**
+     * Seconds until the threshold is first exceeded, -1 if it never is
+     */
+    public double getTimeToExceedanceSeconds() {
+        return firstExceedance < 0 ? -1 : firstExceedance * stepSeconds;
+    }
+
+    public double getStepSeconds() {
+        return stepSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return "peak " + peak + " at " + peakIndex + ", volume " + volume
+                + ", above " + threshold + " for " + getExceedanceSeconds() + " s";
+    }
+}
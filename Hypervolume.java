@@ -0,0 +1,105 @@
+package iwhr.swmm.optModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * @author fww
+ * Hypervolume of a set of minimized objective vectors with respect to a reference point
+ */
+public class Hypervolume {
+
+    /**
+     * Exact hypervolume dominated by the points and bounded by the reference point,
+     * computed by slicing along the last objective (HSO). Points that do not dominate
+     * the reference point are ignored.
+     */
+    public static double of(double[][] points, double[] reference) {
+        List<double[]> inside = new ArrayList<>(points.length);
+        for (double[] point : points) {
+            if (dominates(point, reference)) {
+                inside.add(point);
+            }
+        }
+        double[][] front = nonDominated(inside.toArray(new double[0][]));
+        return slice(front, reference, reference.length);
+    }
+
+    /**
+     * Non-dominated subset of the points, minimization in every objective
+     */
+    public static double[][] nonDominated(double[][] points) {
+        List<double[]> front = new ArrayList<>();
+        for (int i = 0; i < points.length; i++) {
+            boolean dominated = false;
+            for (int j = 0; j < points.length && !dominated; j++) {
+                dominated = j != i && (dominates(points[j], points[i])
+                        || (j < i && Arrays.equals(points[j], points[i])));
+            }
+            if (!dominated) {
+                front.add(points[i]);
+            }
+        }
+        return front.toArray(new double[0][]);
+    }
+
+    /**
+     * True when a is no worse than b in every objective and better in at least one
+     */
+    public static boolean dominates(double[] a, double[] b) {
+        boolean better = false;
+        for (int k = 0; k < a.length; k++) {
+            if (a[k] > b[k]) {
+                return false;
+            }
+            if (a[k] < b[k]) {
+                better = true;
+            }
+        }
+        return better;
+    }
+
+    private static double slice(double[][] points, double[] reference, int dimensions) {
+        if (points.length == 0) {
+            return 0;
+        }
+        if (dimensions == 1) {
+            double min = Double.POSITIVE_INFINITY;
+            for (double[] point : points) {
+                min = Math.min(min, point[0]);
+            }
+            return reference[0] - min;
+        }
+        if (dimensions == 2) {
+            return area(points, reference);
+        }
+
+        int last = dimensions - 1;
+        double[][] sorted = points.clone();
+        Arrays.sort(sorted, Comparator.comparingDouble(p -> p[last]));
+        double volume = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            double upper = i + 1 < sorted.length ? sorted[i + 1][last] : reference[last];
+            double depth = upper - sorted[i][last];
+            if (depth > 0) {
+                volume += slice(Arrays.copyOf(sorted, i + 1), reference, last) * depth;
+            }
+        }
+        return volume;
+    }
+
+    private static double area(double[][] points, double[] reference) {
+        double[][] sorted = points.clone();
+        Arrays.sort(sorted, Comparator.comparingDouble(p -> p[0]));
+        double area = 0;
+        double bestY = reference[1];
+        for (int i = 0; i < sorted.length; i++) {
+            bestY = Math.min(bestY, sorted[i][1]);
+            double nextX = i + 1 < sorted.length ? sorted[i + 1][0] : reference[0];
+            area += (nextX - sorted[i][0]) * (reference[1] - bestY);
+        }
+        return area;
+    }
+}
@@ -0,0 +1,90 @@
+package iwhr.swmm.optModel;
+
+import io.jenetics.Gene;
+import io.jenetics.engine.EvolutionResult;
+import io.jenetics.ext.moea.Vec;
+
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+/**
+ * @author fww
+ * Evolution stream limit for MOEA: continue while the hypervolume of the population's
+ * non-dominated front still improves. A new instance is needed for every run.
+ */
+public class HypervolumeLimit<G extends Gene<?, G>> implements Predicate<EvolutionResult<G, Vec<double[]>>> {
+
+    private final int interval;
+    private final int window;
+    private final double tolerance;
+
+    private double[] reference;
+    // Hypervolume of the last window + 1 checks, used as a ring buffer
+    private final double[] history;
+    private int checks;
+    private double last;
+
+    /**
+     * @param interval  generations between two hypervolume evaluations
+     * @param window    generations over which the improvement is measured
+     * @param tolerance relative improvement below which the run stops
+     */
+    public HypervolumeLimit(int interval, int window, double tolerance) {
+        this.interval = Math.max(interval, 1);
+        this.window = Math.max(window / this.interval, 1);
+        this.tolerance = tolerance;
+        this.history = new double[this.window + 1];
+    }
+
+    /**
+     * Last computed hypervolume
+     */
+    public double getHypervolume() {
+        return last;
+    }
+
+    @Override
+    public boolean test(EvolutionResult<G, Vec<double[]>> result) {
+        if (result.generation() % interval != 0) {
+            return true;
+        }
+        double[][] points = result.population().stream()
+                .map(pt -> pt.fitness().data())
+                .toArray(double[][]::new);
+        if (reference == null) {
+            reference = reference(points);
+        }
+        last = Hypervolume.of(points, reference);
+        history[checks % history.length] = last;
+        checks++;
+        if (checks <= window) {
+            return true;
+        }
+        double previous = history[(checks - 1 - window) % history.length];
+        return last - previous > tolerance * Math.max(Math.abs(previous), Double.MIN_NORMAL);
+    }
+
+    /**
+     * Nadir of the first evaluated population moved outwards by 10 % of the objective range,
+     * fixed for the whole run so that hypervolumes stay comparable
+     */
+    private static double[] reference(double[][] points) {
+        int m = points[0].length;
+        double[] min = new double[m];
+        double[] max = new double[m];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (double[] point : points) {
+            for (int k = 0; k < m; k++) {
+                min[k] = Math.min(min[k], point[k]);
+                max[k] = Math.max(max[k], point[k]);
+            }
+        }
+        double[] reference = new double[m];
+        for (int k = 0; k < m; k++) {
+            double range = max[k] - min[k];
+            reference[k] = max[k] + (range > 0 ? 0.1 * range : Math.max(Math.abs(max[k]) * 0.1, 1e-9));
+        }
+        return reference;
+    }
+}
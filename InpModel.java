@@ -0,0 +1,453 @@
+package iwhr.swmm.swmmtools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author fww
+ * In-memory SWMM INP model indexed by section, parsed once and written back in one buffered pass
+ */
+public class InpModel {
+
+    public static final String OPTIONS = "OPTIONS";
+    public static final String CONTROLS = "CONTROLS";
+    public static final String TIMESERIES = "TIMESERIES";
+    public static final String FILES = "FILES";
+
+    // Prefix of the rules and time series owned by the MPC loop, everything else is left untouched
+    public static final String MPC_PREFIX = "MPC_";
+
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    // Link sections and the link type the control rules name, the usually short sections first
+    private static final String[][] LINK_SECTIONS = {
+            {"ORIFICES", "ORIFICE"}, {"WEIRS", "WEIR"}, {"PUMPS", "PUMP"}, {"OUTLETS", "OUTLET"}, {"CONDUITS", "CONDUIT"}};
+
+    // Dates and times as SWMM reads them in [OPTIONS] and control rules
+    private static final DateTimeFormatter DATE_IN = DateTimeFormatter.ofPattern("M/d/yyyy", Locale.ROOT);
+    private static final DateTimeFormatter TIME_IN = DateTimeFormatter.ofPattern("H:mm[:ss]", Locale.ROOT);
+    private static final DateTimeFormatter DATE_OUT = DateTimeFormatter.ofPattern("MM/dd/yyyy", Locale.ROOT);
+    private static final DateTimeFormatter TIME_OUT = DateTimeFormatter.ofPattern("HH:mm:ss", Locale.ROOT);
+
+    private final File file;
+    // Section name (upper case) -> section, in file order; "" holds lines before the first header
+    private final Map<String, Section> sections = new LinkedHashMap<>();
+    private boolean dirty;
+
+    private static final class Section {
+        final String header;
+        final List<String> lines;
+        // Serialized text of the section, rebuilt only after the section has changed
+        String text;
+
+        Section(String header, List<String> lines) {
+            this.header = header;
+            this.lines = lines;
+        }
+    }
+
+    private InpModel(File file) {
+        this.file = file;
+    }
+
+    public static InpModel read(File swmmFile) throws IOException {
+        InpModel model = new InpModel(swmmFile);
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(new FileInputStream(swmmFile), StandardCharsets.UTF_8))) {
+            Section current = new Section(null, new ArrayList<>());
+            model.sections.put("", current);
+            String line;
+            while ((line = br.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.startsWith("[") && trimmed.endsWith("]")) {
+                    String name = trimmed.substring(1, trimmed.length() - 1).toUpperCase(Locale.ROOT);
+                    current = new Section(line, new ArrayList<>());
+                    model.sections.put(name, current);
+                } else {
+                    current.lines.add(line);
+                }
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Independent copy of the model, e.g. one per forecast scenario; unchanged sections share
+     * their cached text with this model
+     */
+    public InpModel copy() {
+        InpModel copy = new InpModel(file);
+        for (Map.Entry<String, Section> entry : sections.entrySet()) {
+            Section section = new Section(entry.getValue().header, new ArrayList<>(entry.getValue().lines));
+            section.text = entry.getValue().text;
+            copy.sections.put(entry.getKey(), section);
+        }
+        copy.dirty = dirty;
+        return copy;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean hasSection(String name) {
+        return sections.containsKey(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Read-only view of a section's lines, empty when the section does not exist
+     */
+    public List<String> lines(String name) {
+        Section section = sections.get(name.toUpperCase(Locale.ROOT));
+        return section == null ? Collections.<String>emptyList() : Collections.unmodifiableList(section.lines);
+    }
+
+    public void replaceSection(String name, List<String> lines) {
+        Section section = section(name);
+        section.lines.clear();
+        section.lines.addAll(lines);
+        touch(section);
+    }
+
+    public String getOption(String key) {
+        for (String line : lines(OPTIONS)) {
+            String[] tokens = tokens(line);
+            if (tokens.length > 1 && tokens[0].equalsIgnoreCase(key)) {
+                return tokens[1];
+            }
+        }
+        return null;
+    }
+
+    public void setOption(String key, String value) {
+        Section section = section(OPTIONS);
+        String formatted = String.format("%-21s%s", key, value);
+        for (int i = 0; i < section.lines.size(); i++) {
+            String[] tokens = tokens(section.lines.get(i));
+            if (tokens.length > 0 && tokens[0].equalsIgnoreCase(key)) {
+                if (!section.lines.get(i).equals(formatted)) {
+                    section.lines.set(i, formatted);
+                    touch(section);
+                }
+                return;
+            }
+        }
+        // Append after the last option, before trailing blank lines
+        int at = section.lines.size();
+        while (at > 0 && section.lines.get(at - 1).trim().isEmpty()) {
+            at--;
+        }
+        section.lines.add(at, formatted);
+        touch(section);
+    }
+
+    /**
+     * Set simulation and reporting period, both given as "date time" as in data/timeList.txt
+     */
+    public void setSimulationWindow(String start, String end) {
+        String[] s = dateTime(start);
+        String[] e = dateTime(end);
+        setOption("START_DATE", s[0]);
+        setOption("START_TIME", s[1]);
+        setOption("REPORT_START_DATE", s[0]);
+        setOption("REPORT_START_TIME", s[1]);
+        setOption("END_DATE", e[0]);
+        setOption("END_TIME", e[1]);
+    }
+
+    /**
+     * Set the hot start files of the next run in [FILES]
+     *
+     * @param use  state to start from, null to start from the initial conditions
+     * @param save file receiving the state at the end of the run, null to save nothing
+     */
+    public void setHotStart(File use, File save) {
+        Section section = section(FILES);
+        List<String> lines = new ArrayList<>();
+        for (String line : section.lines) {
+            String[] tokens = tokens(line);
+            if (!(tokens.length > 1 && tokens[1].equalsIgnoreCase("HOTSTART"))) {
+                lines.add(line);
+            }
+        }
+        int at = lines.size();
+        while (at > 0 && lines.get(at - 1).trim().isEmpty()) {
+            at--;
+        }
+        if (save != null) {
+            lines.add(at, "SAVE HOTSTART \"" + save.getAbsolutePath() + "\"");
+        }
+        if (use != null) {
+            lines.add(at, "USE HOTSTART \"" + use.getAbsolutePath() + "\"");
+        }
+        if (!lines.equals(section.lines)) {
+            section.lines.clear();
+            section.lines.addAll(lines);
+            touch(section);
+        }
+    }
+
+    /**
+     * SWMM type of a link (ORIFICE, WEIR, PUMP, OUTLET or CONDUIT), from the section that defines it
+     */
+    public String linkType(String linkId) {
+        for (String[] linkSection : LINK_SECTIONS) {
+            for (String line : lines(linkSection[0])) {
+                String[] tokens = tokens(line);
+                if (tokens.length > 0 && tokens[0].equals(linkId)) {
+                    return linkSection[1];
+                }
+            }
+        }
+        throw new IllegalArgumentException("Link " + linkId + " is not defined in " + file);
+    }
+
+    /**
+     * Replace the MPC control rules with a stepwise schedule. The steps are pinned to absolute
+     * simulation dates and clock times rather than to the elapsed time, so the rules stay right
+     * when the next run starts later: setting k holds from start + k * interval, the last one
+     * until the end of any run.
+     *
+     * @param linkIds         controlled element IDs, their types are looked up in the model
+     * @param settings        settings ordered gate by gate, settings[g * steps + k] for gate g at step k
+     * @param start           "date time" at which step 0 begins
+     * @param intervalMinutes control interval
+     */
+    public void setControlRules(String[] linkIds, double[] settings, String start, int intervalMinutes) {
+        int steps = settings.length / linkIds.length;
+        Section section = section(CONTROLS);
+        List<String> kept = new ArrayList<>();
+        boolean inMpcRule = false;
+        for (String line : section.lines) {
+            String[] tokens = tokens(line);
+            if (tokens.length > 1 && tokens[0].equalsIgnoreCase("RULE")) {
+                inMpcRule = tokens[1].startsWith(MPC_PREFIX);
+            }
+            if (!inMpcRule) {
+                kept.add(line);
+            }
+        }
+        while (!kept.isEmpty() && kept.get(kept.size() - 1).trim().isEmpty()) {
+            kept.remove(kept.size() - 1);
+        }
+
+        String[] s = dateTime(start);
+        LocalDateTime first = LocalDateTime.of(LocalDate.parse(s[0], DATE_IN), LocalTime.parse(s[1], TIME_IN));
+        for (int g = 0; g < linkIds.length; g++) {
+            String type = linkType(linkIds[g]);
+            for (int k = 0; k < steps; k++) {
+                LocalDateTime from = first.plusMinutes((long) k * intervalMinutes);
+                LocalDateTime to = k < steps - 1 ? from.plusMinutes(intervalMinutes) : null;
+                String action = String.format(Locale.ROOT, "THEN %s %s SETTING = %.2f", type, linkIds[g], settings[g * steps + k]);
+                List<List<String>> premises = premises(from, to);
+                for (int p = 0; p < premises.size(); p++) {
+                    kept.add("");
+                    kept.add("RULE " + MPC_PREFIX + linkIds[g] + "_" + k + (p == 0 ? "" : "_" + p));
+                    List<String> conditions = premises.get(p);
+                    for (int c = 0; c < conditions.size(); c++) {
+                        kept.add((c == 0 ? "IF " : "AND ") + conditions.get(c));
+                    }
+                    kept.add(action);
+                    kept.add("PRIORITY 1");
+                }
+            }
+        }
+        kept.add("");
+        section.lines.clear();
+        section.lines.addAll(kept);
+        touch(section);
+    }
+
+    /**
+     * Add or replace one point of a time series in [TIMESERIES]
+     */
+    public void putTimeSeriesValue(String name, String dateTime, double value) {
+        Section section = section(TIMESERIES);
+        String[] dt = dateTime(dateTime);
+        String formatted = String.format(Locale.ROOT, "%-16s %-10s %-10s %.4f", name, dt[0], dt[1], value);
+        int last = -1;
+        for (int i = 0; i < section.lines.size(); i++) {
+            String[] tokens = tokens(section.lines.get(i));
+            if (tokens.length > 2 && tokens[0].equals(name)) {
+                if (tokens[1].equals(dt[0]) && tokens[2].equals(dt[1])) {
+                    section.lines.set(i, formatted);
+                    touch(section);
+                    return;
+                }
+                last = i;
+            }
+        }
+        if (last < 0) {
+            // Keep a blank line before the first entry of a new series
+            while (!section.lines.isEmpty() && section.lines.get(section.lines.size() - 1).trim().isEmpty()) {
+                section.lines.remove(section.lines.size() - 1);
+            }
+            section.lines.add(formatted);
+            section.lines.add("");
+        } else {
+            section.lines.add(last + 1, formatted);
+        }
+        touch(section);
+    }
+
+    /**
+     * Replace all entries of one time series in [TIMESERIES], entries are "date time value" lines
+     */
+    public void setTimeSeries(String name, List<String> entries) {
+        Section section = section(TIMESERIES);
+        int insertAt = -1;
+        for (int i = section.lines.size() - 1; i >= 0; i--) {
+            String[] tokens = tokens(section.lines.get(i));
+            if (tokens.length > 0 && tokens[0].equals(name)) {
+                section.lines.remove(i);
+                insertAt = i;
+            }
+        }
+        List<String> formatted = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            formatted.add(String.format("%-16s %s", name, entry.trim()));
+        }
+        if (insertAt < 0) {
+            section.lines.addAll(formatted);
+            section.lines.add("");
+        } else {
+            section.lines.addAll(insertAt, formatted);
+        }
+        touch(section);
+    }
+
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Write the model back to its own file if anything changed
+     */
+    public void write() throws IOException {
+        if (dirty) {
+            write(file);
+            dirty = false;
+        }
+    }
+
+    /**
+     * Write the whole model to a file; unchanged sections reuse their cached text
+     */
+    public void write(File target) throws IOException {
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(target), StandardCharsets.UTF_8), 1 << 16)) {
+            writeTo(writer);
+        }
+    }
+
+    /**
+     * Current model as INP file text, e.g. to hand a snapshot to another process
+     */
+    public String serialize() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    private void writeTo(Writer writer) throws IOException {
+        for (Section section : sections.values()) {
+            if (section.text == null) {
+                StringBuilder sb = new StringBuilder();
+                if (section.header != null) {
+                    sb.append(section.header).append(LINE_SEPARATOR);
+                }
+                for (String line : section.lines) {
+                    sb.append(line).append(LINE_SEPARATOR);
+                }
+                section.text = sb.toString();
+            }
+            writer.write(section.text);
+        }
+    }
+
+    private Section section(String name) {
+        String key = name.toUpperCase(Locale.ROOT);
+        Section section = sections.get(key);
+        if (section == null) {
+            section = new Section("[" + key + "]", new ArrayList<>());
+            sections.put(key, section);
+        }
+        return section;
+    }
+
+    private void touch(Section section) {
+        section.text = null;
+        dirty = true;
+    }
+
+    private static String[] tokens(String line) {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.startsWith(";")) {
+            return new String[0];
+        }
+        return trimmed.split("\\s+");
+    }
+
+    /**
+     * Rule conditions covering [from, to), to == null for open-ended; one premise per rule,
+     * as a single SWMM rule cannot say "this date from a clock time, or any later date"
+     */
+    private static List<List<String>> premises(LocalDateTime from, LocalDateTime to) {
+        List<List<String>> premises = new ArrayList<>(3);
+        LocalDate fromDate = from.toLocalDate();
+        List<String> firstDay = new ArrayList<>(3);
+        firstDay.add("SIMULATION DATE = " + DATE_OUT.format(fromDate));
+        firstDay.add("SIMULATION CLOCKTIME >= " + TIME_OUT.format(from));
+        premises.add(firstDay);
+        if (to == null) {
+            premises.add(Collections.singletonList("SIMULATION DATE > " + DATE_OUT.format(fromDate)));
+            return premises;
+        }
+        LocalDate toDate = to.toLocalDate();
+        if (toDate.equals(fromDate)) {
+            firstDay.add("SIMULATION CLOCKTIME < " + TIME_OUT.format(to));
+            return premises;
+        }
+        if (ChronoUnit.DAYS.between(fromDate, toDate) > 1) {
+            List<String> between = new ArrayList<>(2);
+            between.add("SIMULATION DATE > " + DATE_OUT.format(fromDate));
+            between.add("SIMULATION DATE < " + DATE_OUT.format(toDate));
+            premises.add(between);
+        }
+        if (!to.toLocalTime().equals(LocalTime.MIDNIGHT)) {
+            List<String> lastDay = new ArrayList<>(2);
+            lastDay.add("SIMULATION DATE = " + DATE_OUT.format(toDate));
+            lastDay.add("SIMULATION CLOCKTIME < " + TIME_OUT.format(to));
+            premises.add(lastDay);
+        }
+        return premises;
+    }
+
+    private static String[] dateTime(String value) {
+        String[] parts = value.trim().split("\\s+");
+        return new String[]{parts[0], parts.length > 1 ? parts[1] : "00:00:00"};
+    }
+}
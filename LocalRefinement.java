@@ -0,0 +1,203 @@
+package iwhr.swmm.optModel;
+
+import org.apache.commons.math3.exception.TooManyEvaluationsException;
+import org.apache.commons.math3.exception.TooManyIterationsException;
+import org.apache.commons.math3.optim.InitialGuess;
+import org.apache.commons.math3.optim.MaxEval;
+import org.apache.commons.math3.optim.MaxIter;
+import org.apache.commons.math3.optim.SimpleBounds;
+import org.apache.commons.math3.optim.SimpleValueChecker;
+import org.apache.commons.math3.optim.nonlinear.scalar.GoalType;
+import org.apache.commons.math3.optim.nonlinear.scalar.ObjectiveFunction;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.BOBYQAOptimizer;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.CMAESOptimizer;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.NelderMeadSimplex;
+import org.apache.commons.math3.optim.nonlinear.scalar.noderiv.SimplexOptimizer;
+import org.apache.commons.math3.random.MersenneTwister;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author fww
+ * Derivative-free local refinement of gate schedules with commons-math3, used by OptMethod to
+ * refine the best candidates after the evolutionary phase or every few generations. Each
+ * refinement runs sequentially within its evaluation budget; several candidates are refined
+ * concurrently. The best point seen is returned even when the budget runs out, the clamped
+ * starting point when it ran out before the first evaluation.
+ */
+public class LocalRefinement {
+
+    public enum Method {CMAES, BOBYQA, NELDER_MEAD}
+
+    private final Method method;
+    private final int maxEvaluations;
+    private final int candidates;
+    private final int interval;
+
+    /**
+     * Best point of one refinement
+     */
+    public static final class Result {
+        private final double[] point;
+        private final double[] objectives;
+        private final double value;
+
+        Result(double[] point, double[] objectives, double value) {
+            this.point = point;
+            this.objectives = objectives;
+            this.value = value;
+        }
+
+        public double[] getPoint() {
+            return point;
+        }
+
+        public double[] getObjectives() {
+            return objectives;
+        }
+
+        public double getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * @param maxEvaluations objective evaluations per refined candidate
+     * @param candidates     candidates refined each time
+     * @param interval       generations between refinements during the run, 0 to refine only the final result
+     */
+    public LocalRefinement(Method method, int maxEvaluations, int candidates, int interval) {
+        if (maxEvaluations < 1 || candidates < 1 || interval < 0) {
+            throw new IllegalArgumentException("Local refinement needs at least 1 evaluation and 1 candidate and an interval of 0 or more, got "
+                    + maxEvaluations + ", " + candidates + ", " + interval);
+        }
+        this.method = method;
+        this.maxEvaluations = maxEvaluations;
+        this.candidates = candidates;
+        this.interval = interval;
+    }
+
+    /**
+     * Parse cmaes, bobyqa or neldermead
+     */
+    public static Method method(String value) {
+        switch (value) {
+            case "cmaes":
+                return Method.CMAES;
+            case "bobyqa":
+                return Method.BOBYQA;
+            case "neldermead":
+                return Method.NELDER_MEAD;
+            default:
+                throw new IllegalArgumentException("Unknown local optimizer: " + value);
+        }
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    public int getMaxEvaluations() {
+        return maxEvaluations;
+    }
+
+    public int getCandidates() {
+        return candidates;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Refine several starting points concurrently on the executor
+     */
+    public Result[] refineAll(double[][] starts, Function<double[], double[]> objectives,
+                              ToDoubleFunction<double[]> scalarization, double min, double max, Executor executor) {
+        List<CompletableFuture<Result>> futures = new ArrayList<>(starts.length);
+        for (double[] start : starts) {
+            futures.add(CompletableFuture.supplyAsync(() -> refine(start, objectives, scalarization, min, max), executor));
+        }
+        return futures.stream().map(CompletableFuture::join).toArray(Result[]::new);
+    }
+
+    /**
+     * Minimize the scalarized objectives from a starting point within [min, max]
+     *
+     * @param objectives    objective values of a point
+     * @param scalarization value minimized by the local optimizer
+     */
+    public Result refine(double[] start, Function<double[], double[]> objectives,
+                         ToDoubleFunction<double[]> scalarization, double min, double max) {
+        int n = start.length;
+        double[] lower = new double[n];
+        double[] upper = new double[n];
+        Arrays.fill(lower, min);
+        Arrays.fill(upper, max);
+        double[] guess = new double[n];
+        for (int j = 0; j < n; j++) {
+            guess[j] = Math.min(Math.max(start[j], min), max);
+        }
+        double range = max - min;
+
+        // Keeps the best point, the optimizers may stop on the evaluation limit without a result
+        Result[] best = new Result[1];
+        ObjectiveFunction function = new ObjectiveFunction(point -> {
+            double[] x = new double[n];
+            for (int j = 0; j < n; j++) {
+                x[j] = Math.min(Math.max(point[j], min), max);
+            }
+            double[] y = objectives.apply(x);
+            double value = scalarization.applyAsDouble(y);
+            if (best[0] == null || value < best[0].value) {
+                best[0] = new Result(x, y, value);
+            }
+            return value;
+        });
+        try {
+            switch (method) {
+                case CMAES:
+                    double[] sigma = new double[n];
+                    Arrays.fill(sigma, 0.1 * range);
+                    new CMAESOptimizer(maxEvaluations, Double.NEGATIVE_INFINITY, true, 0, 0,
+                            new MersenneTwister(42), false, new SimpleValueChecker(1e-8, 1e-10))
+                            .optimize(new MaxEval(maxEvaluations), function, GoalType.MINIMIZE,
+                                    new InitialGuess(guess), new SimpleBounds(lower, upper),
+                                    new CMAESOptimizer.Sigma(sigma),
+                                    new CMAESOptimizer.PopulationSize(4 + (int) (3 * Math.log(n))));
+                    break;
+                case BOBYQA:
+                    // Initial trust region of 10 % of the range, the bounds must span twice the radius
+                    new BOBYQAOptimizer(2 * n + 1, 0.1 * range, 1e-4 * range)
+                            .optimize(new MaxEval(maxEvaluations), function, GoalType.MINIMIZE,
+                                    new InitialGuess(guess), new SimpleBounds(lower, upper));
+                    break;
+                default:
+                    // No bound support: points are clamped before evaluation
+                    new SimplexOptimizer(1e-8, 1e-10)
+                            .optimize(new MaxEval(maxEvaluations), new MaxIter(maxEvaluations), function,
+                                    GoalType.MINIMIZE, new InitialGuess(guess), new NelderMeadSimplex(n, 0.1 * range));
+            }
+        } catch (TooManyEvaluationsException | TooManyIterationsException e) {
+            // Budget used up, the best point so far is the result
+        }
+        if (best[0] == null) {
+            // The budget ran out before the first evaluation: the clamped start is the result
+            double[] y = objectives.apply(guess);
+            return new Result(guess, y, scalarization.applyAsDouble(y));
+        }
+        return best[0];
+    }
+
+    @Override
+    public String toString() {
+        return method + " (" + maxEvaluations + " evaluations, " + candidates + " candidates"
+                + (interval > 0 ? ", every " + interval + " generations)" : ", final result)");
+    }
+}
@@ -0,0 +1,28 @@
+package iwhr.swmm.optModel;
+
+import iwhr.swmm.util.CurveData;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author fww
+ * Multi-objective optimization with OptMethod.MOEA, the applied schedule is config's compromise
+ * solution of the Pareto set
+ */
+public class MoeaOptimizer implements ControlOptimizer {
+
+    private final OptConfig config;
+
+    public MoeaOptimizer(OptConfig config) {
+        this.config = config;
+    }
+
+    @Override
+    public ControlResult optimize(CurveData curveData, int[] parameters, List<ArrayList<double[]>> scenarios) throws IOException {
+        ParetoResult pareto = OptMethod.MOEA(curveData, parameters, scenarios, config);
+        return new ControlResult(pareto.compromise(config.getSelection()), pareto.getGenerations(),
+                pareto.getTermination(), pareto.getEvaluations());
+    }
+}
@@ -0,0 +1,78 @@
+package iwhr.swmm.optModel;
+
+import java.util.Arrays;
+
+/**
+ * @author fww
+ * Move blocking: the horizon of each gate is split into blocks and the setting is held within a
+ * block, so every gate has one gene per block
+ */
+public class MoveBlocking implements ControlParameterization {
+
+    private final int gates;
+    private final int steps;
+    private final int[] blocks;
+
+    /**
+     * @param blocks block lengths in decision steps, they must add up to steps
+     */
+    public MoveBlocking(int gates, int steps, int[] blocks) {
+        if (Arrays.stream(blocks).sum() != steps || Arrays.stream(blocks).anyMatch(b -> b < 1)) {
+            throw new IllegalArgumentException("Blocks " + Arrays.toString(blocks) + " do not cover " + steps + " steps");
+        }
+        this.gates = gates;
+        this.steps = steps;
+        this.blocks = blocks.clone();
+    }
+
+    /**
+     * Control horizon of m steps: the first m - 1 settings are free, the last one is held until
+     * the end of the prediction horizon
+     */
+    public static MoveBlocking controlHorizon(int gates, int steps, int m) {
+        if (m < 1 || m > steps) {
+            throw new IllegalArgumentException("Control horizon must be in [1, " + steps + "]");
+        }
+        int[] blocks = new int[m];
+        Arrays.fill(blocks, 1);
+        blocks[m - 1] = steps - m + 1;
+        return new MoveBlocking(gates, steps, blocks);
+    }
+
+    @Override
+    public int genotypeLength() {
+        return gates * blocks.length;
+    }
+
+    @Override
+    public double[] expand(double[] genotype) {
+        double[] schedule = new double[gates * steps];
+        for (int g = 0; g < gates; g++) {
+            int k = g * steps;
+            for (int b = 0; b < blocks.length; b++) {
+                Arrays.fill(schedule, k, k + blocks[b], genotype[g * blocks.length + b]);
+                k += blocks[b];
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Mean setting of each block
+     */
+    @Override
+    public double[] compress(double[] schedule) {
+        double[] genotype = new double[genotypeLength()];
+        for (int g = 0; g < gates; g++) {
+            int k = g * steps;
+            for (int b = 0; b < blocks.length; b++) {
+                double sum = 0;
+                for (int j = 0; j < blocks[b]; j++) {
+                    sum += schedule[k++];
+                }
+                genotype[g * blocks.length + b] = sum / blocks[b];
+            }
+        }
+        return genotype;
+    }
+}
@@ -0,0 +1,485 @@
+package iwhr.swmm.mpcModel;
+
+import iwhr.swmm.element.Simulation;
+import iwhr.swmm.element.SimulationJob;
+import iwhr.swmm.element.SwmmWorkerPool;
+import iwhr.swmm.optModel.ControlOptimizer;
+import iwhr.swmm.optModel.ControlParameterization;
+import iwhr.swmm.optModel.ControlResult;
+import iwhr.swmm.optModel.OptConfig;
+import iwhr.swmm.optModel.RateLimit;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.swmmtools.HotStartChain;
+import iwhr.swmm.swmmtools.InpModel;
+import iwhr.swmm.swmmtools.SeriesKey;
+import iwhr.swmm.swmmtools.SeriesStore;
+import iwhr.swmm.util.CurveData;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * @author fww
+ * One MPC control step of the Jingdian-Qinting Lake network: prediction, optimization, setpoint
+ * rewrite and feedback. Keeps the parsed model, the optimizer and the worker processes between
+ * steps, so the batch run over timeList.txt and the MpcDaemon share the same warm state.
+ * Steps run one at a time; model updates can be queued from any thread and apply to the next step.
+ */
+public class MpcController implements Closeable {
+    protected static Logger logger = LogManager.getLogger(MpcController.class);
+
+    // Optimizer input in the order jdhFitness reads it: heads, inflows, then gate flow rates;
+    // the one list for every caller of jdhFitness, which reads its input by position
+    public static final SeriesKey[] RESULT_KEYS = SeriesKey.of(
+            new String[]{"JDH", "JFX_1480", "YTX_x3", "YTX_x2", "Lake_QTH", "t",
+                    "JFX_1480", "YTX_x3", "JFX_1870", "Lake_QTH",
+                    "JDHGATE1", "JDHGATE2", "JDHGATE4", "W4", "P1"},
+            new String[]{"Head", "Head", "Head", "Head", "Head", "Head",
+                    "TotalInflow", "TotalInflow", "TotalInflow", "TotalInflow",
+                    "Flow", "Flow", "Flow", "Flow", "Flow"});
+
+    // Controlled gates and pump, one per parameters[3]
+    public static final String[] CONTROL_IDS = {"JDHGATE1", "JDHGATE2", "JDHGATE4", "W4", "P1"};
+
+    private final File swmmFile;
+    private final CurveData curveData = new CurveData();
+    //Model Predictive Control Parameters
+    private final int[] parameters = new int[]{120, 10, 10, 5};
+    private final int predictionSteps = parameters[0] / parameters[1];
+    private final OptConfig optConfig;
+    private final ControlOptimizer optimizer;
+    private final FloodPriority priority;
+    // Everything extracted from a prediction run: the optimizer input and the priority series
+    private final SeriesKey[] predictionKeys;
+    // Prediction of the current step, the first scenario of an ensemble
+    private final AtomicReference<SeriesStore> prediction = new AtomicReference<>();
+    private final InpModel inp;
+    private final HotStartChain hotStart;
+    // State saved by the last successful feedback run and its model time; hot start files written so far
+    private File state;
+    private String stateTime;
+    private int stateCount;
+    private final SwmmWorkerPool workers;
+    private List<List<String>> ensemble;
+    private final String rainSeries;
+    private final boolean deadline;
+    private final long intervalMillis;
+    private final long marginMillis;
+    private long feedbackMillis;
+    private final MpcMetrics metrics;
+    // Observations and forecasts received since the last step
+    private final Queue<Consumer<InpModel>> updates = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Controller with the optimizer of -Dmpc.optimizer and the tributaries of -Dmpc.priority
+     */
+    public static MpcController fromSystemProperties(File swmmFile) throws Exception {
+        // Fitness evaluation executor, see OptConfig.fromSystemProperties
+        OptConfig optConfig = OptConfig.fromSystemProperties();
+        return new MpcController(swmmFile, optConfig, System.getProperty("mpc.optimizer", "moea"),
+                PriorityConfig.fromSystemProperties());
+    }
+
+    /**
+     * The remaining settings come from system properties: mpc.hotStart, mpc.workers, mpc.ensemble,
+     * mpc.rainSeries, mpc.deadline, mpc.deadlineMargin and the mpc.metrics settings
+     *
+     * @param optimizer moea | ga | hybrid | hybrid-ga, the GA optimizes the objective of the priority tributary
+     */
+    public MpcController(File swmmFile, OptConfig optConfig, String optimizer, PriorityConfig priorityConfig) throws Exception {
+        this.swmmFile = swmmFile;
+        this.optConfig = optConfig;
+        // Genotype of the optimizers, e.g. -Dopt.control=blocking:4 -Dopt.rateLimit=0.9
+        optConfig.setParameterization(ControlParameterization.fromSystemProperties(parameters[3], predictionSteps));
+        this.priority = new FloodPriority(priorityConfig);
+        this.predictionKeys = union(RESULT_KEYS, priorityConfig.keys());
+        this.optimizer = ControlOptimizer.of(optimizer, optConfig, () -> priority.priority(prediction.get()));
+
+        // Parse the model once, each step only touches the time window and the MPC control rules
+        this.inp = InpModel.read(swmmFile);
+        // Model state is carried between steps through SWMM hot start files unless -Dmpc.hotStart=false
+        this.hotStart = Boolean.parseBoolean(System.getProperty("mpc.hotStart", "true"))
+                ? new HotStartChain(new File(swmmFile.getParentFile(), "hotstart"))
+                : null;
+        if (hotStart != null) {
+            hotStart.reset();
+        }
+
+        // -Dmpc.workers=N runs predictions in N isolated SWMM worker processes
+        int workerCount = Integer.getInteger("mpc.workers", 0);
+        this.workers = workerCount > 0
+                ? new SwmmWorkerPool(workerCount, swmmFile.getParentFile(), new File(swmmFile.getParentFile(), "workers"))
+                : null;
+
+        // -Dmpc.ensemble=<dir> optimizes against every rainfall forecast in the directory, each file
+        // replacing the entries of the rain gage time series -Dmpc.rainSeries in the prediction model
+        this.ensemble = System.getProperty("mpc.ensemble") != null
+                ? readEnsemble(new File(System.getProperty("mpc.ensemble")))
+                : null;
+        this.rainSeries = System.getProperty("mpc.rainSeries", "RAIN");
+        if (ensemble != null && workers == null) {
+            logger.warn("Ensemble of " + ensemble.size() + " scenarios runs sequentially, set -Dmpc.workers to run it in parallel");
+        }
+
+        // -Dmpc.deadline=true bounds each optimization by the control interval minus the measured
+        // simulation and I/O time of the step and a safety margin (-Dmpc.deadlineMargin seconds)
+        this.deadline = Boolean.getBoolean("mpc.deadline");
+        this.intervalMillis = parameters[1] * 60_000L;
+        this.marginMillis = Long.getLong("mpc.deadlineMargin", 30L) * 1000;
+
+        // Per-phase timings over JMX and in -Dmpc.metrics, see MpcMetrics.fromSystemProperties
+        this.metrics = MpcMetrics.fromSystemProperties(intervalMillis);
+    }
+
+    /**
+     * Control interval in minutes
+     */
+    public int getIntervalMinutes() {
+        return parameters[1];
+    }
+
+    /**
+     * Prediction horizon in minutes
+     */
+    public int getHorizonMinutes() {
+        return parameters[0];
+    }
+
+    /**
+     * Control intervals in the prediction horizon
+     */
+    public int getPredictionSteps() {
+        return predictionSteps;
+    }
+
+    public String getRainSeries() {
+        return rainSeries;
+    }
+
+    public MpcMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Queue a change of the model, e.g. observed values or a new rainfall forecast; it is applied at
+     * the start of the next step, so callers never wait for a running optimization
+     */
+    public void submit(Consumer<InpModel> update) {
+        updates.add(update);
+    }
+
+    /**
+     * Replace the rainfall scenarios of the ensemble, null to predict with the model's own rain series only
+     */
+    public void setEnsemble(List<List<String>> ensemble) {
+        submit(model -> this.ensemble = ensemble);
+    }
+
+    /**
+     * Run control step index: predict from start to horizonEnd, optimize, apply the first interval's
+     * setpoints and, with hot start, simulate start to next to carry the state to the next step.
+     * Times are "date time" as in data/timeList.txt. The prediction starts from the state of the last
+     * feedback run; when that ended before start, e.g. after a skipped or failed step, the gap is
+     * simulated first with the controls in force.
+     */
+    public synchronized MpcStepResult step(int index, String start, String horizonEnd, String next) throws Exception {
+        MpcMetrics.Step step = metrics.startStep(index, start);
+        // Prediction
+        long mark = System.nanoTime();
+        for (Consumer<InpModel> update; (update = updates.poll()) != null; ) {
+            update.accept(inp);
+        }
+        File initial = null;
+        if (hotStart != null) {
+            mark = step.lap(MpcPhase.INP_REWRITE, mark);
+            initial = initialState(index, start);
+            mark = step.lap(MpcPhase.FEEDBACK, mark);
+        }
+        inp.setSimulationWindow(start, horizonEnd);
+        if (hotStart != null) {
+            inp.setHotStart(initial, null);
+        }
+        step.lap(MpcPhase.INP_REWRITE, mark);
+        List<SeriesStore> predictions = ensemble == null
+                ? Collections.singletonList(predict(step))
+                : predictEnsemble(step);
+        prediction.set(predictions.get(0));
+        // The stores' own arrays, shared by all fitness evaluations without copying
+        List<ArrayList<double[]>> scenarios = new ArrayList<>(predictions.size());
+        for (SeriesStore store : predictions) {
+            scenarios.add(store.asDataList(RESULT_KEYS));
+        }
+
+        if (deadline) {
+            // The feedback run of this step is assumed to take as long as the last one
+            optConfig.setTimeBudgetMillis(optimizationBudget(step.elapsedMillis() + feedbackMillis));
+        }
+        mark = System.nanoTime();
+        ControlResult control = optimizer.optimize(curveData, parameters, scenarios);
+        mark = step.lap(MpcPhase.OPTIMIZATION, mark);
+        step.setControl(control);
+        double[] output = control.getSchedule();
+        if (!control.isConverged()) {
+            logger.warn("MPC step " + index + " applies the best-so-far schedule: " + control.getTermination());
+        }
+
+        double[] result = new double[output.length];
+        for (int j = 0; j < output.length; j++) {
+            BigDecimal bd = BigDecimal.valueOf(output[j] / 4.5);
+            result[j] = bd.setScale(2, BigDecimal.ROUND_HALF_UP).doubleValue();
+        }
+        // Changes stay in memory and go to disk with the next run
+        applyControls(start, result);
+        if (optConfig.getParameterization() instanceof RateLimit) {
+            // The next schedule may move away from the settings applied now by the rate limit only
+            double[] applied = new double[CONTROL_IDS.length];
+            for (int g = 0; g < applied.length; g++) {
+                applied[g] = output[g * predictionSteps];
+            }
+            optConfig.setParameterization(((RateLimit) optConfig.getParameterization()).withInitial(applied));
+        }
+        long feedbackStart = step.lap(MpcPhase.SETPOINT_REWRITE, mark);
+
+        if (hotStart != null) {
+            // Feedback: run the applied control interval and save the state the next prediction starts from
+            inp.setSimulationWindow(start, next);
+            File saved = hotStart.fileFor(++stateCount);
+            inp.setHotStart(initial, saved);
+            inp.write();
+            mark = step.lap(MpcPhase.SETPOINT_REWRITE, feedbackStart);
+            Simulation.run(swmmFile);
+            keepState(saved, next);
+            step.lap(MpcPhase.FEEDBACK, mark);
+        }
+        feedbackMillis = (System.nanoTime() - feedbackStart) / 1_000_000;
+        metrics.finish(step);
+        return new MpcStepResult(index, start, CONTROL_IDS, result, control, step);
+    }
+
+    /**
+     * Hot start state at start, null for the INP initial conditions. The last feedback run's state is
+     * carried forward to start when it ended earlier; if that fails the chain is reset.
+     */
+    private File initialState(int index, String start) {
+        if (state == null) {
+            if (index > 0) {
+                logger.warn("MPC step " + index + " at " + start + " has no saved model state, it starts from the INP initial conditions");
+            }
+            return null;
+        }
+        if (start.equals(stateTime)) {
+            return state;
+        }
+        logger.warn("MPC step " + index + " starts at " + start + " but the model state is at " + stateTime
+                + ", simulating the gap with the controls in force");
+        try {
+            File saved = hotStart.fileFor(++stateCount);
+            inp.setSimulationWindow(stateTime, start);
+            inp.setHotStart(state, saved);
+            inp.write();
+            Simulation.run(swmmFile);
+            if (!saved.isFile()) {
+                throw new IOException("no hot start file " + saved + " written");
+            }
+            keepState(saved, start);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Simulating " + stateTime + " to " + start + " failed, MPC step " + index
+                    + " starts from the INP initial conditions: " + e.getMessage());
+            state = null;
+            stateTime = null;
+            hotStart.reset();
+        }
+        return state;
+    }
+
+    /**
+     * Make a saved state the start of the next step and delete the older ones
+     */
+    private void keepState(File saved, String time) {
+        state = saved;
+        stateTime = time;
+        hotStart.release(stateCount);
+    }
+
+    /**
+     * Series of the last feedback run, i.e. of the control interval just applied; needs hot start,
+     * otherwise there is no feedback run, and the OUT file engine, the stepwise engine writes no OUT file
+     */
+    public synchronized SeriesStore readFeedback(SeriesKey... keys) throws IOException {
+        if (hotStart == null) {
+            throw new IllegalStateException("No feedback run without hot start, set -Dmpc.hotStart=true");
+        }
+        if (Simulation.STEPWISE_ENGINE) {
+            throw new IllegalStateException("The stepwise engine writes no OUT file to read the feedback run from, unset -Dmpc.engine");
+        }
+        return BatchReadResult.readStore(swmmFile, keys);
+    }
+
+    /**
+     * Write the model with the last applied controls
+     */
+    public synchronized void writeModel() throws IOException {
+        inp.write();
+    }
+
+    /**
+     * Stop the worker processes, close the metrics and write the queued convergence samples
+     */
+    @Override
+    public void close() throws IOException {
+        if (workers != null) {
+            workers.close();
+        }
+        try {
+            metrics.close();
+        } finally {
+            if (optConfig.getConvergence() != null) {
+                optConfig.getConvergence().close();
+            }
+        }
+    }
+
+    /**
+     * Wall-clock budget of one optimization: the control interval minus simulation and I/O time and
+     * the safety margin, but at least 10 % of the interval so that a slow prediction still gets a schedule
+     */
+    private long optimizationBudget(long simulationMillis) {
+        long budget = intervalMillis - simulationMillis - marginMillis;
+        long floor = intervalMillis / 10;
+        if (budget < floor) {
+            logger.warn("Simulation and I/O took " + simulationMillis + " ms, optimization budget raised to " + floor + " ms");
+            return floor;
+        }
+        return budget;
+    }
+
+    /**
+     * Write the optimized schedule as MPC control rules and record the setting applied in this interval
+     */
+    private void applyControls(String time, double[] result) {
+        inp.setControlRules(CONTROL_IDS, result, time, parameters[1]);
+        int steps = result.length / CONTROL_IDS.length;
+        for (int g = 0; g < CONTROL_IDS.length; g++) {
+            inp.putTimeSeriesValue(InpModel.MPC_PREFIX + CONTROL_IDS[g], time, result[g * steps]);
+        }
+    }
+
+    /**
+     * Run the prediction and extract the optimizer input series, in a worker process when a pool is configured
+     */
+    private SeriesStore predict(MpcMetrics.Step step) throws Exception {
+        String[] ids = SeriesKey.elements(predictionKeys);
+        String[] variables = SeriesKey.variables(predictionKeys);
+        int minutes = parameters[0];
+        double[][] series;
+        long mark = System.nanoTime();
+        if (workers == null) {
+            inp.write();
+            step.lap(MpcPhase.INP_REWRITE, mark);
+            series = Simulation.run(swmmFile, ids, variables, minutes, step);
+        } else {
+            SimulationJob job = new SimulationJob(inp.serialize(), ids, variables, minutes);
+            mark = step.lap(MpcPhase.INP_REWRITE, mark);
+            series = workers.submit(job).get();
+            step.lap(MpcPhase.SIMULATE, mark);
+        }
+        return store(series);
+    }
+
+    private SeriesStore store(double[][] series) {
+        return SeriesStore.of(predictionKeys, series, Simulation.REPORT_MINUTES * 60);
+    }
+
+    /**
+     * Keys of both arrays, each once and in order of first appearance
+     */
+    private static SeriesKey[] union(SeriesKey[] keys, SeriesKey[] more) {
+        Set<SeriesKey> all = new LinkedHashSet<>(Arrays.asList(keys));
+        all.addAll(Arrays.asList(more));
+        return all.toArray(new SeriesKey[0]);
+    }
+
+    /**
+     * Run the prediction once per rainfall scenario, concurrently when a worker pool is configured
+     */
+    private List<SeriesStore> predictEnsemble(MpcMetrics.Step step) throws Exception {
+        String[] ids = SeriesKey.elements(predictionKeys);
+        String[] variables = SeriesKey.variables(predictionKeys);
+        int minutes = parameters[0];
+        List<SeriesStore> scenarios = new ArrayList<>(ensemble.size());
+        long mark = System.nanoTime();
+        if (workers != null) {
+            List<SimulationJob> jobs = new ArrayList<>(ensemble.size());
+            for (List<String> rain : ensemble) {
+                InpModel scenario = inp.copy();
+                scenario.setTimeSeries(rainSeries, rain);
+                jobs.add(new SimulationJob(scenario.serialize(), ids, variables, minutes));
+            }
+            mark = step.lap(MpcPhase.INP_REWRITE, mark);
+            for (double[][] series : workers.runAll(jobs)) {
+                scenarios.add(store(series));
+            }
+            step.lap(MpcPhase.SIMULATE, mark);
+        } else {
+            // One native engine per process, so the scenarios run one after another
+            File scenarioFile = new File(swmmFile.getParentFile(), "scenario.inp");
+            for (List<String> rain : ensemble) {
+                InpModel scenario = inp.copy();
+                scenario.setTimeSeries(rainSeries, rain);
+                scenario.write(scenarioFile);
+                step.lap(MpcPhase.INP_REWRITE, mark);
+                scenarios.add(store(Simulation.run(scenarioFile, ids, variables, minutes, step)));
+                mark = System.nanoTime();
+            }
+        }
+        logger.debug("Prediction results of " + scenarios.size() + " scenarios read");
+        return scenarios;
+    }
+
+    /**
+     * Rainfall scenarios, one file per ensemble member in name order, each holding
+     * "date time value" time series lines; blank lines and ; comments are skipped
+     */
+    static List<List<String>> readEnsemble(File directory) throws IOException {
+        File[] files = directory.listFiles(File::isFile);
+        if (files == null || files.length == 0) {
+            throw new FileNotFoundException("No rainfall scenarios in " + directory);
+        }
+        Arrays.sort(files);
+        List<List<String>> ensemble = new ArrayList<>(files.length);
+        for (File file : files) {
+            try (InputStream in = new FileInputStream(file)) {
+                ensemble.add(readSeries(in));
+            }
+        }
+        return ensemble;
+    }
+
+    /**
+     * "date time value" time series lines; blank lines and ; comments are skipped
+     */
+    static List<String> readSeries(InputStream in) throws IOException {
+        List<String> entries = new ArrayList<>();
+        BufferedReader br = new BufferedReader(new InputStreamReader(in, "utf-8"));
+        String line;
+        while ((line = br.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith(";")) {
+                entries.add(line);
+            }
+        }
+        return entries;
+    }
+}
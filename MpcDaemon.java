@@ -0,0 +1,246 @@
+package iwhr.swmm.mpcModel;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @author fww
+ * Long-running MPC service: keeps the model, optimizer and SWMM workers of an MpcController warm,
+ * runs one control step at every control interval boundary of the wall clock and serves a local
+ * HTTP API. Observations and forecasts are time series lines "date time value" in the request body.
+ * <pre>
+ * POST /observations?series=NAME   add or replace the points of time series NAME
+ * POST /forecast[?series=NAME]     replace the rainfall forecast (default series -Dmpc.rainSeries)
+ * POST /step                       run the step of the current control interval now and return its result
+ * GET  /setpoints                  setpoints, latency and convergence of the last step
+ * GET  /status                     steps run, next scheduled step and deadline counters
+ * </pre>
+ * Settings: mpc.host / mpc.port = address of the API (default 127.0.0.1, 8085),
+ * mpc.timeFormat = model time format (default MM/dd/yyyy HH:mm:ss), mpc.schedule = false to run
+ * steps on POST /step only (default true); the controller settings see MpcController.
+ */
+public class MpcDaemon {
+    protected static Logger logger = LogManager.getLogger(MpcDaemon.class);
+
+    private final MpcController controller;
+    private final DateTimeFormatter timeFormat;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "mpc-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicReference<MpcStepResult> last = new AtomicReference<>();
+    private volatile LocalDateTime nextStep;
+    private int index;
+    // Start of the last step that ran through, a control interval is run at most once
+    private LocalDateTime lastStart;
+
+    public MpcDaemon(MpcController controller, DateTimeFormatter timeFormat) {
+        this.controller = controller;
+        this.timeFormat = timeFormat;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File swmmFile = args.length > 0 ? new File(args[0]) : new File(framework_directory+"/swmm.inp");
+        MpcController controller = MpcController.fromSystemProperties(swmmFile);
+        MpcDaemon daemon = new MpcDaemon(controller,
+                DateTimeFormatter.ofPattern(System.getProperty("mpc.timeFormat", "MM/dd/yyyy HH:mm:ss"), Locale.ROOT));
+
+        Server server = new Server();
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost(System.getProperty("mpc.host", "127.0.0.1"));
+        connector.setPort(Integer.getInteger("mpc.port", 8085));
+        server.addConnector(connector);
+        server.setHandler(daemon.new Api());
+        server.setStopAtShutdown(true);
+        server.start();
+        if (Boolean.parseBoolean(System.getProperty("mpc.schedule", "true"))) {
+            daemon.scheduleNext();
+        }
+        logger.info("MPC daemon listening on " + connector.getHost() + ":" + connector.getLocalPort());
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            daemon.scheduler.shutdownNow();
+            try {
+                controller.writeModel();
+                controller.close();
+            } catch (IOException e) {
+                logger.warn("MPC daemon did not shut down cleanly: " + e.getMessage());
+            }
+        }, "mpc-shutdown"));
+        server.join();
+    }
+
+    /**
+     * Run one step for the control interval starting at start; an interval that has already run
+     * through, or one before it, is rejected, a failed one may be retried
+     */
+    public synchronized MpcStepResult step(LocalDateTime start) throws Exception {
+        if (lastStart != null && !start.isAfter(lastStart)) {
+            throw new IllegalArgumentException("The step at " + timeFormat.format(start) + " is not after the last step at "
+                    + timeFormat.format(lastStart));
+        }
+        LocalDateTime horizonEnd = start.plusMinutes(controller.getHorizonMinutes());
+        LocalDateTime next = start.plusMinutes(controller.getIntervalMinutes());
+        MpcStepResult result = controller.step(index, timeFormat.format(start), timeFormat.format(horizonEnd),
+                timeFormat.format(next));
+        index++;
+        lastStart = start;
+        last.set(result);
+        return result;
+    }
+
+    /**
+     * Start of the control interval that contains time, the intervals are aligned to the local day
+     */
+    private LocalDateTime intervalStart(LocalDateTime time) {
+        int interval = controller.getIntervalMinutes();
+        LocalDateTime day = time.truncatedTo(ChronoUnit.DAYS);
+        long minutes = ChronoUnit.MINUTES.between(day, time);
+        return day.plusMinutes(minutes / interval * interval);
+    }
+
+    /**
+     * Schedule the next step at the next control interval boundary of the local day; a boundary
+     * passed while a step was still running is skipped rather than run late, the controller then
+     * carries the model state over the skipped interval
+     */
+    private void scheduleNext() {
+        LocalDateTime now = LocalDateTime.now();
+        int interval = controller.getIntervalMinutes();
+        LocalDateTime boundary = intervalStart(now).plusMinutes(interval);
+        nextStep = boundary;
+        scheduler.schedule(() -> {
+            try {
+                step(boundary);
+            } catch (IllegalArgumentException e) {
+                logger.info("Scheduled MPC step skipped: " + e.getMessage());
+            } catch (Exception e) {
+                logger.error("MPC step at " + timeFormat.format(boundary) + " failed", e);
+            }
+            if (LocalDateTime.now().isAfter(boundary.plusMinutes(interval))) {
+                logger.warn("MPC step at " + timeFormat.format(boundary) + " ran past the next control interval, skipping it");
+            }
+            scheduleNext();
+        }, ChronoUnit.MILLIS.between(now, boundary), TimeUnit.MILLISECONDS);
+    }
+
+    private String status() {
+        MpcMetrics metrics = controller.getMetrics();
+        MpcStepResult result = last.get();
+        LocalDateTime next = nextStep;
+        return "{\"steps\":" + metrics.getSteps()
+                + ",\"lastStep\":" + (result == null ? "null" : "\"" + result.getTime() + "\"")
+                + ",\"nextStep\":" + (next == null ? "null" : "\"" + timeFormat.format(next) + "\"")
+                + ",\"intervalMs\":" + metrics.getIntervalMillis()
+                + ",\"lastStepMs\":" + String.format(Locale.ROOT, "%.3f", metrics.getLastStepMillis())
+                + ",\"deadlineWarnings\":" + metrics.getDeadlineWarnings()
+                + ",\"deadlineMisses\":" + metrics.getDeadlineMisses() + "}";
+    }
+
+    private final class Api extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                           HttpServletResponse response) throws IOException {
+            baseRequest.setHandled(true);
+            String method = request.getMethod();
+            try {
+                if ("GET".equals(method) && "/setpoints".equals(target)) {
+                    MpcStepResult result = last.get();
+                    if (result == null) {
+                        reply(response, HttpServletResponse.SC_NOT_FOUND, error("No step has run yet"));
+                    } else {
+                        reply(response, HttpServletResponse.SC_OK, result.toJson());
+                    }
+                } else if ("GET".equals(method) && "/status".equals(target)) {
+                    reply(response, HttpServletResponse.SC_OK, status());
+                } else if ("POST".equals(method) && "/observations".equals(target)) {
+                    // Body first, a form content type would otherwise be consumed as parameters
+                    List<String> entries = MpcController.readSeries(request.getInputStream());
+                    String series = request.getParameter("series");
+                    if (series == null) {
+                        reply(response, HttpServletResponse.SC_BAD_REQUEST, error("Missing series parameter"));
+                        return;
+                    }
+                    String[][] points = new String[entries.size()][];
+                    for (int i = 0; i < points.length; i++) {
+                        points[i] = parsePoint(entries.get(i));
+                    }
+                    controller.submit(model -> {
+                        for (String[] point : points) {
+                            model.putTimeSeriesValue(series, point[0], Double.parseDouble(point[1]));
+                        }
+                    });
+                    reply(response, HttpServletResponse.SC_ACCEPTED, "{\"accepted\":" + points.length + "}");
+                } else if ("POST".equals(method) && "/forecast".equals(target)) {
+                    List<String> entries = MpcController.readSeries(request.getInputStream());
+                    String series = request.getParameter("series");
+                    String name = series != null ? series : controller.getRainSeries();
+                    for (String entry : entries) {
+                        parsePoint(entry);
+                    }
+                    controller.submit(model -> model.setTimeSeries(name, entries));
+                    reply(response, HttpServletResponse.SC_ACCEPTED, "{\"accepted\":" + entries.size() + "}");
+                } else if ("POST".equals(method) && "/step".equals(target)) {
+                    // The interval under way, so manual and scheduled steps share one time line
+                    reply(response, HttpServletResponse.SC_OK, step(intervalStart(LocalDateTime.now())).toJson());
+                } else {
+                    reply(response, HttpServletResponse.SC_NOT_FOUND, error("Unknown endpoint " + method + " " + target));
+                }
+            } catch (IllegalArgumentException e) {
+                reply(response, HttpServletResponse.SC_BAD_REQUEST, error(e.getMessage()));
+            } catch (Exception e) {
+                logger.error("MPC request " + method + " " + target + " failed", e);
+                reply(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, error(String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    /**
+     * "date time value" of one time series line, checked before it is queued
+     */
+    private static String[] parsePoint(String entry) {
+        String[] tokens = entry.split("\\s+");
+        if (tokens.length != 3) {
+            throw new IllegalArgumentException("Expected \"date time value\", got \"" + entry + "\"");
+        }
+        try {
+            Double.parseDouble(tokens[2]);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number in \"" + entry + "\"");
+        }
+        return new String[]{tokens[0] + " " + tokens[1], tokens[2]};
+    }
+
+    private static String error(String message) {
+        return "{\"error\":\"" + message.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}";
+    }
+
+    private static void reply(HttpServletResponse response, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        response.setStatus(status);
+        response.setContentType("application/json;charset=utf-8");
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+}
@@ -0,0 +1,425 @@
+package iwhr.swmm.mpcModel;
+
+import iwhr.swmm.optModel.ControlResult;
+import iwhr.swmm.util.LatencyHistogram;
+import iwhr.swmm.util.RollingFileWriter;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * @author fww
+ * Per-step instrumentation of the MPC loop: latency histograms of every MpcPhase and of whole
+ * steps, the optimizer's generations and evaluations, and the step duration against the control
+ * interval. Exposed over JMX and written as one line per step to a rolling JSONL or CSV file, so
+ * monitoring can alert when steps approach the control-interval deadline.
+ */
+public class MpcMetrics implements MpcMetricsMXBean, Closeable {
+    protected static Logger logger = LogManager.getLogger(MpcMetrics.class);
+
+    private static final String OBJECT_NAME = "iwhr.swmm:type=MpcMetrics";
+    private static final MpcPhase[] PHASES = MpcPhase.values();
+
+    private final long intervalMillis;
+    private final double warnFraction;
+    private final Map<MpcPhase, LatencyHistogram> phases = new EnumMap<>(MpcPhase.class);
+    private final LatencyHistogram steps = new LatencyHistogram();
+    private final RollingFileWriter log;
+    private final boolean csv;
+    private ObjectName registered;
+
+    private volatile double lastStepMillis;
+    private volatile long deadlineWarnings;
+    private volatile long deadlineMisses;
+    private volatile long lastGenerations;
+    private volatile long lastEvaluations;
+    private volatile double lastEvaluationsPerSecond;
+    private volatile String lastTermination = "";
+
+    /**
+     * Timings of one control step, filled by the loop and the simulation helpers
+     */
+    public static final class Step {
+        private final int index;
+        private final String time;
+        private final long startMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private final long[] nanos = new long[PHASES.length];
+        private final boolean[] timed = new boolean[PHASES.length];
+        private ControlResult control;
+        private double totalMillis;
+
+        private Step(int index, String time) {
+            this.index = index;
+            this.time = time;
+        }
+
+        /**
+         * Add the time since a mark to a phase; phases timed several times in a step accumulate
+         *
+         * @return the current System.nanoTime, the mark of the next phase
+         */
+        public long lap(MpcPhase phase, long sinceNanos) {
+            long now = System.nanoTime();
+            nanos[phase.ordinal()] += now - sinceNanos;
+            timed[phase.ordinal()] = true;
+            return now;
+        }
+
+        public void setControl(ControlResult control) {
+            this.control = control;
+        }
+
+        public long elapsedMillis() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        public double millis(MpcPhase phase) {
+            return nanos[phase.ordinal()] / 1e6;
+        }
+
+        public boolean isTimed(MpcPhase phase) {
+            return timed[phase.ordinal()];
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getTime() {
+            return time;
+        }
+
+        /**
+         * Duration of the whole step, set when it is finished
+         */
+        public double totalMillis() {
+            return totalMillis;
+        }
+    }
+
+    /**
+     * @param intervalMillis control interval the steps are measured against
+     * @param warnFraction   share of the interval above which a step counts as a deadline warning
+     * @param log            per-step metrics file, null for none
+     */
+    public MpcMetrics(long intervalMillis, double warnFraction, RollingFileWriter log) {
+        this.intervalMillis = intervalMillis;
+        this.warnFraction = warnFraction;
+        this.log = log;
+        this.csv = log != null && log.getFile().getName().endsWith(".csv");
+        for (MpcPhase phase : PHASES) {
+            phases.put(phase, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Settings from system properties:
+     * mpc.metrics = per-step metrics file, .csv for CSV, otherwise JSON lines (default none),
+     * mpc.metricsMaxBytes / mpc.metricsFiles = size at which the file is rolled and rolled files kept (default 10 MB, 5),
+     * mpc.metricsWarn = share of the control interval at which a step is reported as close to the deadline (default 0.8),
+     * mpc.jmx = false to not register the MBean (default true)
+     */
+    public static MpcMetrics fromSystemProperties(long intervalMillis) throws IOException {
+        String path = System.getProperty("mpc.metrics");
+        RollingFileWriter log = null;
+        if (path != null) {
+            log = new RollingFileWriter(new File(path), Long.getLong("mpc.metricsMaxBytes", 10L << 20),
+                    Integer.getInteger("mpc.metricsFiles", 5), path.endsWith(".csv") ? csvHeader() : null);
+        }
+        MpcMetrics metrics = new MpcMetrics(intervalMillis,
+                Double.parseDouble(System.getProperty("mpc.metricsWarn", "0.8")), log);
+        if (Boolean.parseBoolean(System.getProperty("mpc.jmx", "true"))) {
+            metrics.register();
+        }
+        return metrics;
+    }
+
+    /**
+     * Register with the platform MBean server, replacing an earlier registration
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            registered = name;
+        } catch (JMException e) {
+            logger.warn("MPC metrics not available over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Start timing control step index at model time
+     */
+    public Step startStep(int index, String time) {
+        return new Step(index, time);
+    }
+
+    /**
+     * Record a completed step: histograms, JMX values, the metrics file and a deadline warning
+     */
+    public void finish(Step step) {
+        long totalNanos = System.nanoTime() - step.startNanos;
+        steps.recordNanos(totalNanos);
+        for (MpcPhase phase : PHASES) {
+            if (step.timed[phase.ordinal()]) {
+                phases.get(phase).recordNanos(step.nanos[phase.ordinal()]);
+            }
+        }
+        double totalMillis = totalNanos / 1e6;
+        step.totalMillis = totalMillis;
+        double utilization = intervalMillis > 0 ? totalMillis / intervalMillis : 0;
+        lastStepMillis = totalMillis;
+        if (step.control != null) {
+            lastGenerations = step.control.getGenerations();
+            lastEvaluations = step.control.getEvaluations();
+            lastEvaluationsPerSecond = evaluationsPerSecond(step);
+            lastTermination = String.valueOf(step.control.getTermination());
+        }
+
+        logger.info(summary(step, totalMillis));
+        if (utilization >= 1) {
+            deadlineMisses++;
+            logger.warn(String.format(Locale.ROOT, "MPC step %d took %.0f ms, longer than the %d ms control interval",
+                    step.index, totalMillis, intervalMillis));
+        } else if (utilization >= warnFraction) {
+            deadlineWarnings++;
+            logger.warn(String.format(Locale.ROOT, "MPC step %d took %.0f ms, %.0f%% of the control interval",
+                    step.index, totalMillis, 100 * utilization));
+        }
+        if (log != null) {
+            try {
+                log.writeLine(csv ? csvLine(step, totalMillis, utilization) : jsonLine(step, totalMillis, utilization));
+            } catch (IOException e) {
+                logger.warn("Cannot write MPC metrics to " + log.getFile() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static double evaluationsPerSecond(Step step) {
+        double seconds = step.millis(MpcPhase.OPTIMIZATION) / 1000;
+        return seconds > 0 ? step.control.getEvaluations() / seconds : 0;
+    }
+
+    private static String summary(Step step, double totalMillis) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(String.format(Locale.ROOT, "MPC step %d (%s): %.0f ms", step.index, step.time, totalMillis));
+        String separator = " [";
+        for (MpcPhase phase : PHASES) {
+            if (step.timed[phase.ordinal()]) {
+                sb.append(separator).append(phase.key()).append(' ')
+                        .append(String.format(Locale.ROOT, "%.1f", step.millis(phase)));
+                separator = ", ";
+            }
+        }
+        if (separator.equals(", ")) {
+            sb.append(']');
+        }
+        if (step.control != null) {
+            sb.append(String.format(Locale.ROOT, ", %d generations, %d evaluations (%.0f/s), %s",
+                    step.control.getGenerations(), step.control.getEvaluations(),
+                    evaluationsPerSecond(step), step.control.getTermination()));
+        }
+        return sb.toString();
+    }
+
+    private static String csvHeader() {
+        StringBuilder sb = new StringBuilder("step,time,start,total_ms,utilization");
+        for (MpcPhase phase : PHASES) {
+            sb.append(',').append(phase.key()).append("_ms");
+        }
+        return sb.append(",generations,evaluations,evaluations_per_s,termination").toString();
+    }
+
+    private String csvLine(Step step, double totalMillis, double utilization) {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(step.index).append(',').append(step.time).append(',').append(timestamp(step.startMillis))
+                .append(',').append(format(totalMillis)).append(',').append(format(utilization));
+        for (MpcPhase phase : PHASES) {
+            sb.append(',');
+            if (step.timed[phase.ordinal()]) {
+                sb.append(format(step.millis(phase)));
+            }
+        }
+        if (step.control != null) {
+            sb.append(',').append(step.control.getGenerations()).append(',').append(step.control.getEvaluations())
+                    .append(',').append(format(evaluationsPerSecond(step))).append(',').append(step.control.getTermination());
+        } else {
+            sb.append(",,,,");
+        }
+        return sb.toString();
+    }
+
+    private String jsonLine(Step step, double totalMillis, double utilization) {
+        StringBuilder sb = new StringBuilder(384);
+        sb.append("{\"step\":").append(step.index)
+                .append(",\"time\":\"").append(step.time).append('"')
+                .append(",\"start\":\"").append(timestamp(step.startMillis)).append('"')
+                .append(",\"totalMs\":").append(format(totalMillis))
+                .append(",\"intervalMs\":").append(intervalMillis)
+                .append(",\"utilization\":").append(format(utilization))
+                .append(",\"phasesMs\":{");
+        String separator = "";
+        for (MpcPhase phase : PHASES) {
+            if (step.timed[phase.ordinal()]) {
+                sb.append(separator).append('"').append(phase.key()).append("\":").append(format(step.millis(phase)));
+                separator = ",";
+            }
+        }
+        sb.append('}');
+        if (step.control != null) {
+            sb.append(",\"generations\":").append(step.control.getGenerations())
+                    .append(",\"evaluations\":").append(step.control.getEvaluations())
+                    .append(",\"evaluationsPerSecond\":").append(format(evaluationsPerSecond(step)))
+                    .append(",\"termination\":\"").append(step.control.getTermination()).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String timestamp(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSXXX").format(new Date(millis));
+    }
+
+    private Map<String, Double> perPhase(ToDoubleFunction<LatencyHistogram> value) {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (MpcPhase phase : PHASES) {
+            values.put(phase.key(), value.applyAsDouble(phases.get(phase)));
+        }
+        return values;
+    }
+
+    @Override
+    public long getSteps() {
+        return steps.getCount();
+    }
+
+    @Override
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    @Override
+    public double getLastStepMillis() {
+        return lastStepMillis;
+    }
+
+    @Override
+    public double getLastDeadlineUtilization() {
+        return intervalMillis > 0 ? lastStepMillis / intervalMillis : 0;
+    }
+
+    @Override
+    public double getStepMeanMillis() {
+        return steps.getMeanMillis();
+    }
+
+    @Override
+    public double getStepP90Millis() {
+        return steps.quantileMillis(0.9);
+    }
+
+    @Override
+    public double getStepP99Millis() {
+        return steps.quantileMillis(0.99);
+    }
+
+    @Override
+    public double getStepMaxMillis() {
+        return steps.getMaxMillis();
+    }
+
+    @Override
+    public long getDeadlineWarnings() {
+        return deadlineWarnings;
+    }
+
+    @Override
+    public long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    @Override
+    public long getLastGenerations() {
+        return lastGenerations;
+    }
+
+    @Override
+    public long getLastEvaluations() {
+        return lastEvaluations;
+    }
+
+    @Override
+    public double getLastEvaluationsPerSecond() {
+        return lastEvaluationsPerSecond;
+    }
+
+    @Override
+    public String getLastTermination() {
+        return lastTermination;
+    }
+
+    @Override
+    public Map<String, Double> getPhaseLastMillis() {
+        return perPhase(LatencyHistogram::getLastMillis);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMeanMillis() {
+        return perPhase(LatencyHistogram::getMeanMillis);
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP90Millis() {
+        return perPhase(h -> h.quantileMillis(0.9));
+    }
+
+    @Override
+    public Map<String, Double> getPhaseP99Millis() {
+        return perPhase(h -> h.quantileMillis(0.99));
+    }
+
+    @Override
+    public Map<String, Double> getPhaseMaxMillis() {
+        return perPhase(LatencyHistogram::getMaxMillis);
+    }
+
+    /**
+     * Close the metrics file and unregister the MBean
+     */
+    @Override
+    public void close() throws IOException {
+        if (registered != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+            } catch (JMException e) {
+                // Already unregistered
+            }
+            registered = null;
+        }
+        if (log != null) {
+            log.close();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package iwhr.swmm.mpcModel;
+
+import java.util.Map;
+
+/**
+ * @author fww
+ * JMX view of MpcMetrics, registered as iwhr.swmm:type=MpcMetrics. Phase maps are keyed by
+ * MpcPhase.key(); latencies are in milliseconds.
+ */
+public interface MpcMetricsMXBean {
+
+    long getSteps();
+
+    long getIntervalMillis();
+
+    double getLastStepMillis();
+
+    /**
+     * Last step's duration as a share of the control interval
+     */
+    double getLastDeadlineUtilization();
+
+    double getStepMeanMillis();
+
+    double getStepP90Millis();
+
+    double getStepP99Millis();
+
+    double getStepMaxMillis();
+
+    /**
+     * Steps that took longer than the warning share of the control interval
+     */
+    long getDeadlineWarnings();
+
+    /**
+     * Steps that took longer than the control interval
+     */
+    long getDeadlineMisses();
+
+    long getLastGenerations();
+
+    long getLastEvaluations();
+
+    double getLastEvaluationsPerSecond();
+
+    String getLastTermination();
+
+    Map<String, Double> getPhaseLastMillis();
+
+    Map<String, Double> getPhaseMeanMillis();
+
+    Map<String, Double> getPhaseP90Millis();
+
+    Map<String, Double> getPhaseP99Millis();
+
+    Map<String, Double> getPhaseMaxMillis();
+}
@@ -0,0 +1,30 @@
+package iwhr.swmm.mpcModel;
+
+import java.util.Locale;
+
+/**
+ * @author fww
+ * Timed phases of one MPC control step
+ */
+public enum MpcPhase {
+    // Simulation window, hot start and rain updates of the prediction model, and writing it
+    INP_REWRITE,
+    // Opening and starting the SWMM model
+    SWMM_INITIALIZE,
+    // Routing; in a worker process the whole run including result extraction
+    SIMULATE,
+    // Reading the optimizer input series from the OUT file or the engine buffers
+    RESULT_EXTRACTION,
+    OPTIMIZATION,
+    // Rounding the schedule into MPC control rules and writing them for the feedback run
+    SETPOINT_REWRITE,
+    // Simulation of the applied control interval that saves the next hot start state
+    FEEDBACK;
+
+    /**
+     * Name used in the metrics file and over JMX
+     */
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
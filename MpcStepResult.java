@@ -0,0 +1,103 @@
+package iwhr.swmm.mpcModel;
+
+import iwhr.swmm.optModel.ControlResult;
+
+import java.util.Locale;
+
+/**
+ * @author fww
+ * Outcome of one MPC control step: the applied gate/pump setpoints with the step's latency and
+ * the optimizer's convergence, as returned by MpcController and served by MpcDaemon
+ */
+public class MpcStepResult {
+
+    private final int index;
+    private final String time;
+    private final String[] controlIds;
+    private final double[] setpoints;
+    private final ControlResult control;
+    private final MpcMetrics.Step step;
+
+    /**
+     * @param setpoints relative openings ordered gate by gate, setpoints[g * steps + k] for gate g at interval k
+     */
+    public MpcStepResult(int index, String time, String[] controlIds, double[] setpoints,
+                         ControlResult control, MpcMetrics.Step step) {
+        this.index = index;
+        this.time = time;
+        this.controlIds = controlIds;
+        this.setpoints = setpoints;
+        this.control = control;
+        this.step = step;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * Model time at the start of the step
+     */
+    public String getTime() {
+        return time;
+    }
+
+    public String[] getControlIds() {
+        return controlIds.clone();
+    }
+
+    public double[] getSetpoints() {
+        return setpoints;
+    }
+
+    /**
+     * Setpoint of a gate applied in the current control interval
+     */
+    public double getApplied(int gate) {
+        return setpoints[gate * (setpoints.length / controlIds.length)];
+    }
+
+    public ControlResult getControl() {
+        return control;
+    }
+
+    public double getTotalMillis() {
+        return step.totalMillis();
+    }
+
+    public double getMillis(MpcPhase phase) {
+        return step.millis(phase);
+    }
+
+    public String toJson() {
+        int steps = setpoints.length / controlIds.length;
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"step\":").append(index)
+                .append(",\"time\":\"").append(time).append('"')
+                .append(",\"setpoints\":{");
+        for (int g = 0; g < controlIds.length; g++) {
+            sb.append(g == 0 ? "" : ",").append('"').append(controlIds[g]).append("\":[");
+            for (int k = 0; k < steps; k++) {
+                sb.append(k == 0 ? "" : ",").append(setpoints[g * steps + k]);
+            }
+            sb.append(']');
+        }
+        sb.append("},\"totalMs\":").append(format(step.totalMillis())).append(",\"phasesMs\":{");
+        String separator = "";
+        for (MpcPhase phase : MpcPhase.values()) {
+            if (step.isTimed(phase)) {
+                sb.append(separator).append('"').append(phase.key()).append("\":").append(format(step.millis(phase)));
+                separator = ",";
+            }
+        }
+        sb.append("},\"generations\":").append(control.getGenerations())
+                .append(",\"evaluations\":").append(control.getEvaluations())
+                .append(",\"termination\":\"").append(control.getTermination()).append('"')
+                .append(",\"converged\":").append(control.isConverged());
+        return sb.append('}').toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
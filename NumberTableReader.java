@@ -0,0 +1,203 @@
+package iwhr.swmm.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * @author fww
+ * Reads whitespace separated numbers row by row without regular expressions or per-value
+ * allocation: the characters are parsed straight from a reusable buffer and the values of the
+ * current row are kept in a reusable array. Plain decimal numbers are converted exactly like
+ * Double.parseDouble; other tokens (NaN, Infinity, hex, very long mantissas) fall back to it.
+ * Blank lines are skipped.
+ */
+public class NumberTableReader implements Closeable {
+
+    // Exact powers of ten of the fast path: 10^22 is the largest one a double holds exactly
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int k = 1; k < POWERS_OF_TEN.length; k++) {
+            POWERS_OF_TEN[k] = POWERS_OF_TEN[k - 1] * 10;
+        }
+    }
+
+    private final Reader in;
+    private final char[] buffer = new char[1 << 16];
+    private int position;
+    private int limit;
+    private final StringBuilder token = new StringBuilder();
+
+    private double[] values = new double[16];
+    private int count;
+    private long row;
+
+    public NumberTableReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Advance to the next non-blank line
+     *
+     * @return number of values on it, -1 at the end of the input
+     */
+    public int nextRow() throws IOException {
+        count = 0;
+        int c;
+        while ((c = read()) >= 0) {
+            if (c == '\n') {
+                row++;
+                if (count > 0) {
+                    return count;
+                }
+            } else if (c > ' ') {
+                position--;
+                add(parseNumber());
+            }
+        }
+        if (count > 0) {
+            row++;
+            return count;
+        }
+        return -1;
+    }
+
+    /**
+     * Values of the current row, valid up to the row's count until the next call of nextRow
+     */
+    public double[] values() {
+        return values;
+    }
+
+    /**
+     * Line number of the current row, starting at 1
+     */
+    public long lineNumber() {
+        return row;
+    }
+
+    private void add(double value) {
+        if (count == values.length) {
+            double[] grown = new double[count * 2];
+            System.arraycopy(values, 0, grown, 0, count);
+            values = grown;
+        }
+        values[count++] = value;
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = in.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    /**
+     * Parse one token: sign, up to 19 significant digits, optional fraction and exponent
+     */
+    private double parseNumber() throws IOException {
+        token.setLength(0);
+        boolean negative = false;
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fast = true;
+        boolean any = false;
+
+        int c = read();
+        token.append((char) c);
+        if (c == '-' || c == '+') {
+            negative = c == '-';
+            c = next();
+        }
+        while (c >= '0' && c <= '9') {
+            any = true;
+            if (mantissa != 0 || c != '0') {
+                if (digits < 19) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                } else {
+                    fast = false;
+                }
+            }
+            c = next();
+        }
+        if (c == '.') {
+            c = next();
+            while (c >= '0' && c <= '9') {
+                any = true;
+                if (mantissa != 0 || c != '0') {
+                    if (digits < 19) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        digits++;
+                    } else {
+                        fast = false;
+                    }
+                }
+                exponent--;
+                c = next();
+            }
+        }
+        if (any && (c == 'e' || c == 'E')) {
+            c = next();
+            boolean negativeExponent = false;
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                c = next();
+            }
+            int value = 0;
+            boolean expDigits = false;
+            while (c >= '0' && c <= '9') {
+                expDigits = true;
+                value = Math.min(value * 10 + (c - '0'), 100000);
+                c = next();
+            }
+            fast &= expDigits;
+            exponent += negativeExponent ? -value : value;
+        }
+        // Any other character belongs to a token the fast path does not handle
+        while (c > ' ') {
+            fast = false;
+            c = next();
+        }
+        if (c >= 0) {
+            // Leave the separator, a line end has to be seen by nextRow
+            position--;
+            token.setLength(token.length() - 1);
+        }
+
+        if (fast && any && mantissa < (1L << 53) && Math.abs(exponent) <= 22) {
+            // Both operands are exact, so the single rounding of * or / gives the correctly rounded result
+            double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(token.toString());
+        } catch (NumberFormatException e) {
+            throw new NumberFormatException("Line " + (row + 1) + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Next character, also recorded in the token for the fallback
+     */
+    private int next() throws IOException {
+        int c = read();
+        if (c >= 0) {
+            token.append((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
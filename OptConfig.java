@@ -0,0 +1,338 @@
+package iwhr.swmm.optModel;
+
+import iwhr.swmm.util.RollingFileWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * @author fww
+ * Run settings shared by the Jenetics optimizers in OptMethod
+ */
+public class OptConfig {
+
+    // Fitness evaluation executor, Jenetics evaluates each generation's new individuals on it
+    private Executor executor = ForkJoinPool.commonPool();
+    // Seeds each run with the previous MPC step's solutions, null for a random start
+    private WarmStart warmStart;
+    // MOEA stops once the front's hypervolume improves by less than the tolerance over the window
+    private int hypervolumeInterval = 10;
+    private int hypervolumeWindow = 50;
+    private double hypervolumeTolerance = 1e-4;
+    // Fitness of already seen quantized gate vectors, null to always evaluate
+    private FitnessCache fitnessCache;
+    // Picks the applied schedule from the MOEA Pareto set
+    private CompromiseSelection selection = CompromiseSelection.KNEE_POINT;
+    // Combines the objectives of one candidate over the rainfall scenarios of an ensemble run
+    private ScenarioAggregation scenarioAggregation = ScenarioAggregation.expected();
+    // Evaluate the scenarios of one candidate concurrently
+    private boolean parallelScenarios = true;
+    // Wall-clock budget of one optimizer run in milliseconds, 0 for no limit
+    private long timeBudgetMillis;
+    // Pre-screens offspring so that only the most promising fraction is truly evaluated, null to evaluate all
+    private RbfSurrogate surrogate;
+    private double surrogateFraction = 0.3;
+    // Genotype of the optimizers and its expansion to the gate schedule, null for one gene per setting
+    private ControlParameterization parameterization;
+    // Derivative-free local refinement of the best candidates, null for a purely evolutionary run
+    private LocalRefinement refinement;
+    // Generation limit of one run
+    private int maxGenerations = 20000;
+    // Population size of both engines, the MOEA's offspring tournament size
+    private int populationSize = 1000;
+    private int tournamentSize = 60;
+    // Rates of the mutator and the single-point crossover of both engines
+    private double mutationRate = 0.3;
+    private double crossoverRate = 0.2;
+    // Per-generation convergence telemetry of the runs, null to record nothing
+    private ConvergenceRecorder convergence;
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public OptConfig setExecutor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    public WarmStart getWarmStart() {
+        return warmStart;
+    }
+
+    public OptConfig setWarmStart(WarmStart warmStart) {
+        this.warmStart = warmStart;
+        return this;
+    }
+
+    public int getHypervolumeInterval() {
+        return hypervolumeInterval;
+    }
+
+    public OptConfig setHypervolumeInterval(int hypervolumeInterval) {
+        this.hypervolumeInterval = hypervolumeInterval;
+        return this;
+    }
+
+    public int getHypervolumeWindow() {
+        return hypervolumeWindow;
+    }
+
+    public OptConfig setHypervolumeWindow(int hypervolumeWindow) {
+        this.hypervolumeWindow = hypervolumeWindow;
+        return this;
+    }
+
+    public double getHypervolumeTolerance() {
+        return hypervolumeTolerance;
+    }
+
+    public OptConfig setHypervolumeTolerance(double hypervolumeTolerance) {
+        this.hypervolumeTolerance = hypervolumeTolerance;
+        return this;
+    }
+
+    public FitnessCache getFitnessCache() {
+        return fitnessCache;
+    }
+
+    public OptConfig setFitnessCache(FitnessCache fitnessCache) {
+        this.fitnessCache = fitnessCache;
+        return this;
+    }
+
+    public CompromiseSelection getSelection() {
+        return selection;
+    }
+
+    public OptConfig setSelection(CompromiseSelection selection) {
+        this.selection = selection;
+        return this;
+    }
+
+    public ScenarioAggregation getScenarioAggregation() {
+        return scenarioAggregation;
+    }
+
+    public OptConfig setScenarioAggregation(ScenarioAggregation scenarioAggregation) {
+        this.scenarioAggregation = scenarioAggregation;
+        return this;
+    }
+
+    public boolean isParallelScenarios() {
+        return parallelScenarios;
+    }
+
+    public OptConfig setParallelScenarios(boolean parallelScenarios) {
+        this.parallelScenarios = parallelScenarios;
+        return this;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public OptConfig setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+        return this;
+    }
+
+    public RbfSurrogate getSurrogate() {
+        return surrogate;
+    }
+
+    public OptConfig setSurrogate(RbfSurrogate surrogate) {
+        this.surrogate = surrogate;
+        return this;
+    }
+
+    public double getSurrogateFraction() {
+        return surrogateFraction;
+    }
+
+    public OptConfig setSurrogateFraction(double surrogateFraction) {
+        this.surrogateFraction = surrogateFraction;
+        return this;
+    }
+
+    public ControlParameterization getParameterization() {
+        return parameterization;
+    }
+
+    public OptConfig setParameterization(ControlParameterization parameterization) {
+        this.parameterization = parameterization;
+        return this;
+    }
+
+    public LocalRefinement getRefinement() {
+        return refinement;
+    }
+
+    public OptConfig setRefinement(LocalRefinement refinement) {
+        this.refinement = refinement;
+        return this;
+    }
+
+    public int getMaxGenerations() {
+        return maxGenerations;
+    }
+
+    public OptConfig setMaxGenerations(int maxGenerations) {
+        this.maxGenerations = maxGenerations;
+        return this;
+    }
+
+    public int getPopulationSize() {
+        return populationSize;
+    }
+
+    public OptConfig setPopulationSize(int populationSize) {
+        this.populationSize = populationSize;
+        return this;
+    }
+
+    public int getTournamentSize() {
+        return tournamentSize;
+    }
+
+    public OptConfig setTournamentSize(int tournamentSize) {
+        this.tournamentSize = tournamentSize;
+        return this;
+    }
+
+    public double getMutationRate() {
+        return mutationRate;
+    }
+
+    public OptConfig setMutationRate(double mutationRate) {
+        this.mutationRate = mutationRate;
+        return this;
+    }
+
+    public double getCrossoverRate() {
+        return crossoverRate;
+    }
+
+    public OptConfig setCrossoverRate(double crossoverRate) {
+        this.crossoverRate = crossoverRate;
+        return this;
+    }
+
+    public ConvergenceRecorder getConvergence() {
+        return convergence;
+    }
+
+    public OptConfig setConvergence(ConvergenceRecorder convergence) {
+        this.convergence = convergence;
+        return this;
+    }
+
+    /**
+     * Settings from system properties:
+     * opt.executor = forkjoin | virtual | serial (default forkjoin),
+     * opt.threads = parallelism of the forkjoin pool (default: all cores),
+     * opt.warmStart = true to seed each step from the previous one (default false),
+     * opt.cacheSize = entries of the fitness cache, 0 disables it (default 0),
+     * opt.selection = knee | entropy (default knee),
+     * opt.hvWindow / opt.hvTolerance = generations and relative hypervolume gain for MOEA to stop (default 50, 1e-4),
+     * opt.aggregation = expected | worst | cvar:alpha over ensemble scenarios (default expected),
+     * opt.budget = wall-clock budget of one run in milliseconds (default 0, no limit),
+     * opt.surrogate = true to pre-screen offspring with an RBF surrogate (default false),
+     * opt.surrogateCenters / opt.surrogateFraction = basis functions and truly evaluated share (default 100, 0.3),
+     * opt.refine = cmaes | bobyqa | neldermead to refine the best candidates locally (default none),
+     * opt.refineEvery / opt.refineCandidates / opt.refineEvaluations = generations between refinements,
+     * 0 for the final result only, refined candidates and evaluations per candidate (default 0, 3, 200),
+     * opt.population / opt.tournament = population size and MOEA tournament size (default 1000, 60),
+     * opt.mutation / opt.crossover = mutation and single-point crossover rates (default 0.3, 0.2),
+     * opt.generations = generation limit of one run (default 20000),
+     * opt.convergence = true to record per-generation convergence telemetry (default false),
+     * opt.convergenceDump / opt.convergenceDumpEvery = file of sampled populations and generations between
+     * two samples (default none, 100).
+     * The control parameterization depends on the horizon, see ControlParameterization.fromSystemProperties
+     */
+    public static OptConfig fromSystemProperties() {
+        OptConfig config = new OptConfig();
+        int threads = Integer.getInteger("opt.threads", Runtime.getRuntime().availableProcessors());
+        config.setExecutor(executor(System.getProperty("opt.executor", "forkjoin"), threads));
+        config.setPopulationSize(Integer.getInteger("opt.population", config.getPopulationSize()));
+        config.setTournamentSize(Integer.getInteger("opt.tournament", config.getTournamentSize()));
+        config.setMutationRate(Double.parseDouble(System.getProperty("opt.mutation", String.valueOf(config.getMutationRate()))));
+        config.setCrossoverRate(Double.parseDouble(System.getProperty("opt.crossover", String.valueOf(config.getCrossoverRate()))));
+        config.setMaxGenerations(Integer.getInteger("opt.generations", config.getMaxGenerations()));
+        if (Boolean.getBoolean("opt.warmStart")) {
+            // Seed at most half of the individuals so the rest keeps exploring
+            config.setWarmStart(new WarmStart(config.getPopulationSize() / 2));
+        }
+        int cacheSize = Integer.getInteger("opt.cacheSize", 0);
+        if (cacheSize > 0) {
+            // Same precision as the applied setpoints: 0.01 of the 4.5 m opening
+            config.setFitnessCache(new FitnessCache(cacheSize, 4.5, 100));
+        }
+        config.setSelection(CompromiseSelection.of(System.getProperty("opt.selection", "knee")));
+        config.setScenarioAggregation(ScenarioAggregation.of(System.getProperty("opt.aggregation", "expected")));
+        // Serial evaluation stays serial for the scenarios too
+        config.setParallelScenarios(!"serial".equals(System.getProperty("opt.executor")));
+        config.setTimeBudgetMillis(Long.getLong("opt.budget", 0L));
+        if (Boolean.getBoolean("opt.surrogate")) {
+            int centers = Integer.getInteger("opt.surrogateCenters", 100);
+            // Two populations of samples: enough for a well-posed fit, small enough to refit every generation
+            config.setSurrogate(new RbfSurrogate(centers, Math.max(2000, 4 * centers), 4.5));
+            config.setSurrogateFraction(Double.parseDouble(
+                    System.getProperty("opt.surrogateFraction", String.valueOf(config.getSurrogateFraction()))));
+        }
+        String refine = System.getProperty("opt.refine");
+        if (refine != null) {
+            config.setRefinement(new LocalRefinement(LocalRefinement.method(refine),
+                    Integer.getInteger("opt.refineEvaluations", 200),
+                    Integer.getInteger("opt.refineCandidates", 3),
+                    Integer.getInteger("opt.refineEvery", 0)));
+        }
+        String dump = System.getProperty("opt.convergenceDump");
+        if (Boolean.getBoolean("opt.convergence") || dump != null) {
+            try {
+                RollingFileWriter dumpFile = dump == null ? null
+                        : new RollingFileWriter(new File(dump), 100L << 20, 2, "run,generation,individual,objectives");
+                config.setConvergence(new ConvergenceRecorder(config.getMaxGenerations(), 3, dumpFile,
+                        Integer.getInteger("opt.convergenceDumpEvery", 100)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        config.setHypervolumeWindow(Integer.getInteger("opt.hvWindow", config.getHypervolumeWindow()));
+        config.setHypervolumeTolerance(Double.parseDouble(
+                System.getProperty("opt.hvTolerance", String.valueOf(config.getHypervolumeTolerance()))));
+        return config;
+    }
+
+    /**
+     * Create a fitness evaluation executor
+     *
+     * @param kind    forkjoin, virtual or serial
+     * @param threads parallelism, only used by forkjoin
+     */
+    public static Executor executor(String kind, int threads) {
+        switch (kind) {
+            case "serial":
+                return Runnable::run;
+            case "virtual":
+                try {
+                    // Java 21+, looked up reflectively so the project still builds for Java 8
+                    Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                    return (ExecutorService) factory.invoke(null);
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Virtual threads need Java 21 or newer", e);
+                }
+            case "forkjoin":
+                return threads == ForkJoinPool.getCommonPoolParallelism()
+                        ? ForkJoinPool.commonPool()
+                        : new ForkJoinPool(threads);
+            default:
+                throw new IllegalArgumentException("Unknown executor: " + kind);
+        }
+    }
+}
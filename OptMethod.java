@@ -8,9 +8,9 @@ import io.jenetics.ext.moea.NSGA2Selector;
 import io.jenetics.ext.moea.Vec;
 import io.jenetics.ext.moea.VecFactory;
 import io.jenetics.util.DoubleRange;
-import io.jenetics.util.Factory;
 import io.jenetics.util.ISeq;
 import io.jenetics.util.IntRange;
+import io.jenetics.util.MSeq;
 import iwhr.swmm.mpcModel.Mpc;
 import iwhr.swmm.util.CurveData;
 import org.apache.log4j.LogManager;
@@ -20,10 +20,18 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.ToDoubleFunction;
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static io.jenetics.engine.EvolutionResult.toBestPhenotype;
 import static io.jenetics.engine.Limits.bySteadyFitness;
@@ -34,11 +42,50 @@ import static io.jenetics.engine.Limits.bySteadyFitness;
 public class OptMethod {
 	protected static Logger logger = LogManager.getLogger(Mpc.class);
 
-	public static double[] MOEA(CurveData curveData, int[] parameters, ArrayList<double[]> dataList) throws IOException {
+	public static ParetoResult MOEA(CurveData curveData, int[] parameters, ArrayList<double[]> dataList) throws IOException {
+		return MOEA(curveData, parameters, dataList, new OptConfig());
+	}
+
+	public static ParetoResult MOEA(CurveData curveData, int[] parameters, ArrayList<double[]> dataList, OptConfig config) throws IOException {
+		return MOEA(curveData, parameters, Collections.singletonList(dataList), config);
+	}
 
-		final int VARIABLES = parameters[3] * parameters[0] / parameters[1];
+	/**
+	 * Fitness is evaluated concurrently on config's executor; curveData and the scenario datasets
+	 * are shared by all evaluations and must not be modified while the engine runs. With several
+	 * rainfall scenarios each candidate is evaluated against all of them and the objectives are
+	 * aggregated by config's scenario aggregation. The run stops when the front's hypervolume no
+	 * longer improves, when config's time budget runs out or after config's generation limit. With a
+	 * surrogate configured only the most promising offspring are truly evaluated, and the final
+	 * Pareto set is re-evaluated and filtered before it is returned.
+	 */
+	public static ParetoResult MOEA(CurveData curveData, int[] parameters, List<ArrayList<double[]>> scenarios, OptConfig config) throws IOException {
+		// The budget covers the whole call, including engine setup and seed evaluation
+		final DeadlineLimit deadline = new DeadlineLimit(config.getTimeBudgetMillis());
+
+		// The optimizer searches the parameterization's genotype, jdhFitness sees the expanded schedule
+		final ControlParameterization control = parameterization(config, parameters);
+		final int VARIABLES = control.genotypeLength();
+		// Cached fitness belongs to the previous step's datasets
+		if (config.getFitnessCache() != null) {
+			config.getFitnessCache().clear();
+		}
+		// Surrogate samples of older steps no longer describe this step's forecast
+		if (config.getSurrogate() != null) {
+			config.getSurrogate().nextStep();
+		}
 		final int OBJECTIVES = 3;
 		InvertibleCodec<double[], DoubleGene> codec = Codecs.ofVector(DoubleRange.of(0.0, 4.5), VARIABLES);
+		final LongAdder evaluations = new LongAdder();
+		final Function<double[], double[]> trueObjectives = matrix -> {
+			double[] ss = new double[OBJECTIVES];
+			try {
+				ss = objectives(control.expand(matrix), 0.0, 4.5, curveData, parameters, scenarios, config, evaluations);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			return ss;
+		};
 
 		final VecFactory<double[]> factory = VecFactory.ofDoubleVec(
 				Optimize.MINIMUM,
@@ -48,12 +95,7 @@ public class OptMethod {
 
 		final Problem<double[], DoubleGene, Vec<double[]>> PROBLEM = Problem.of(
 				matrix -> {
-					double[] ss = new double[OBJECTIVES];
-					try {
-						ss = jdhSimModel.jdhFitness(matrix, curveData, parameters, dataList);
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
+					double[] ss = trueObjectives.apply(matrix);
 					return factory.newVec(new double[]{ss[0], ss[1], ss[2]});//添加了聚合权重
 				},
 				codec
@@ -61,44 +103,142 @@ public class OptMethod {
 
 //        final Constraint<DoubleGene, double[]> constraint = Constraint.of(codec,true);
 
-		final Engine<DoubleGene, Vec<double[]>> engine = Engine
-				.builder(PROBLEM)
-				.populationSize(1000)
+		final SurrogateEvaluator<Vec<double[]>> surrogate = config.getSurrogate() == null ? null
+				: new SurrogateEvaluator<>(codec::decode, trueObjectives, factory::newVec, UnaryOperator.identity(),
+						config.getSurrogate(), config.getSurrogateFraction(), config.getExecutor());
+		final Engine.Builder<DoubleGene, Vec<double[]>> builder = surrogate == null
+				? Engine.builder(PROBLEM)
+				: new Engine.Builder<>(surrogate, codec.encoding());
+		final LocalRefinement refinement = config.getRefinement();
+		if (refinement != null && refinement.getInterval() > 0) {
+			// A round costs candidates x evaluations fitness calls, skipped when it and the next generation no longer fit the budget
+			final double roundGenerations = 1 + (double) refinement.getCandidates() * refinement.getMaxEvaluations() / config.getPopulationSize();
+			builder.mapping(er -> er.generation() % refinement.getInterval() == 0 && deadline.fits(roundGenerations)
+					? refinePopulation(er, codec, pt -> pt.data(), trueObjectives, UnaryOperator.identity(), factory::newVec,
+							refinement, 0.0, 4.5, config.getExecutor())
+					: er);
+		}
+		final Engine<DoubleGene, Vec<double[]>> engine = builder
+				.populationSize(config.getPopulationSize())
+				.executor(config.getExecutor())
 				.alterers(
-						new Mutator<>(0.3),
-						new SinglePointCrossover<>(0.2),
+						new Mutator<>(config.getMutationRate()),
+						new SinglePointCrossover<>(config.getCrossoverRate()),
 						new SimulatedBinaryCrossover<>(1),
 						new Mutator<>(1.0 / 60)
 				)
-				.offspringSelector(new TournamentSelector<>(60))
+				.offspringSelector(new TournamentSelector<>(config.getTournamentSize()))
 				.survivorsSelector(NSGA2Selector.ofVec())
 				.minimizing()
 				.build();
-		final ISeq<Vec<double[]>> front = engine
-				.stream()
-				.limit(Limits.bySteadyFitness(200))
-				.limit(20000)
-				.collect(MOEA.toParetoSet(IntRange.of(1, 20000)))
-				.map(Phenotype::fitness);
+		// Start from the previous MPC step's Pareto set when a warm start is configured
+		final ISeq<Genotype<DoubleGene>> seeds = seeds(config, codec, control, parameters, 0.0, 4.5);
+		final long[] generations = new long[1];
+		final HypervolumeLimit<DoubleGene> hypervolume = new HypervolumeLimit<>(
+				config.getHypervolumeInterval(), config.getHypervolumeWindow(), config.getHypervolumeTolerance());
+		final ConvergenceRecorder convergence = config.getConvergence();
+		if (convergence != null) {
+			convergence.start(OBJECTIVES);
+		}
+		final ISeq<Phenotype<DoubleGene, Vec<double[]>>> paretoSet = engine
+				.stream(seeds)
+				.limit(deadline)
+				.limit(hypervolume)
+				.limit(config.getMaxGenerations())
+				.peek(er -> generations[0] = er.generation())
+				.peek(er -> {
+					if (convergence != null) {
+						convergence.record(er, (value, k) -> value.data()[k], hypervolume.getHypervolume());
+					}
+				})
+				.collect(MOEA.toParetoSet(IntRange.of(1, 20000)));
 
-		Factory<Genotype<DoubleGene>> x = codec.encoding();
-		String[] s = x.toString().substring(2, x.toString().length() - 2).split(",");
-		double[] matrix = new double[s.length];
-		for (int i = 0; i < matrix.length; i++) {
-			matrix[i] = Double.parseDouble(s[i].substring(1, 6));
+		double[][] genes = paretoSet.map(pt -> codec.decode(pt.genotype())).toArray(new double[0][]);
+		double[][] objectives = paretoSet.map(pt -> pt.fitness().data()).toArray(new double[0][]);
+		if (surrogate != null) {
+			// Members may carry predicted fitness: evaluate them and keep the truly non-dominated ones
+			final double[][] exact = evaluateAll(genes, trueObjectives, config.getExecutor());
+			final int[] front = nonDominated(exact);
+			final double[][] decoded = genes;
+			genes = Arrays.stream(front).mapToObj(k -> decoded[k]).toArray(double[][]::new);
+			objectives = Arrays.stream(front).mapToObj(k -> exact[k]).toArray(double[][]::new);
+			logger.info(surrogate);
+		}
+		// The final refinement costs candidates x evaluations fitness calls, run only if they fit the budget
+		if (refinement != null && !fitsDeadline(deadline, refinement, refinement.getCandidates(), config)) {
+			logger.info("Local refinement " + refinement + " skipped, it does not fit the time budget");
+		} else if (refinement != null) {
+			// Refine the best compromises of the front and keep the non-dominated union
+			final ToDoubleFunction<double[]> scalarization = scalarization(objectives);
+			final double[][] front = genes;
+			final double[][] starts = Arrays.stream(best(objectives, scalarization, refinement.getCandidates()))
+					.mapToObj(k -> front[k]).toArray(double[][]::new);
+			final LocalRefinement.Result[] refined = refinement.refineAll(starts, trueObjectives, scalarization, 0.0, 4.5, config.getExecutor());
+			final double[][] allGenes = Stream.concat(Arrays.stream(genes), Arrays.stream(refined).map(LocalRefinement.Result::getPoint))
+					.toArray(double[][]::new);
+			final double[][] allObjectives = Stream.concat(Arrays.stream(objectives), Arrays.stream(refined).map(LocalRefinement.Result::getObjectives))
+					.toArray(double[][]::new);
+			final int[] kept = nonDominated(allObjectives);
+			genes = Arrays.stream(kept).mapToObj(k -> allGenes[k]).toArray(double[][]::new);
+			objectives = Arrays.stream(kept).mapToObj(k -> allObjectives[k]).toArray(double[][]::new);
+			logger.info("Local refinement " + refinement + ": " + Arrays.stream(kept).filter(k -> k >= front.length).count()
+					+ " of " + refined.length + " refined schedules on the front");
+		}
+		final double[][] solutions = Arrays.stream(genes).map(control::expand).toArray(double[][]::new);
+		if (config.getWarmStart() != null) {
+			config.getWarmStart().update(Arrays.asList(solutions), generations[0]);
+		}
+		final Termination termination = termination(deadline, generations[0], config);
+		logger.info("MOEA stopped after " + generations[0] + " generations (" + termination + "), hypervolume "
+				+ hypervolume.getHypervolume() + ", Pareto set size " + solutions.length
+				+ ", warm start seeds: " + seeds.size() + ", scenarios: " + scenarios.size()
+				+ ", true evaluations: " + evaluations.sum());
+		if (config.getFitnessCache() != null) {
+			logger.info(config.getFitnessCache());
+		}
+		if (convergence != null) {
+			logger.info("MOEA convergence: " + convergence.summary());
 		}
-		return matrix;
+		return new ParetoResult(solutions, objectives, generations[0], termination, evaluations.sum());
 
 	}
 
 	public static double[] jdhGA(CurveData curveData, int[] parameters, ArrayList<double[]> dataList, int priority) throws IOException {
+		return jdhGA(curveData, parameters, dataList, priority, new OptConfig()).getSchedule();
+	}
+
+	public static GaResult jdhGA(CurveData curveData, int[] parameters, ArrayList<double[]> dataList, int priority, OptConfig config) throws IOException {
+		return jdhGA(curveData, parameters, Collections.singletonList(dataList), priority, config);
+	}
 
-		final int VARIABLES = parameters[3] * parameters[0] / parameters[1];
+	/**
+	 * Fitness is evaluated concurrently on config's executor; curveData and the scenario datasets
+	 * are shared by all evaluations and must not be modified while the engine runs. The priority
+	 * objective is aggregated over the scenarios like in MOEA. The run stops at a steady fitness,
+	 * when config's time budget runs out or after config's generation limit. With a surrogate configured
+	 * the ten best individuals of the best generation are re-evaluated and the truly best one wins.
+	 */
+	public static GaResult jdhGA(CurveData curveData, int[] parameters, List<ArrayList<double[]>> scenarios, int priority, OptConfig config) throws IOException {
+		// The budget covers the whole call, including engine setup and seed evaluation
+		final DeadlineLimit deadline = new DeadlineLimit(config.getTimeBudgetMillis());
+
+		// The optimizer searches the parameterization's genotype, jdhFitness sees the expanded schedule
+		final ControlParameterization control = parameterization(config, parameters);
+		final int VARIABLES = control.genotypeLength();
+		// Cached fitness belongs to the previous step's datasets
+		if (config.getFitnessCache() != null) {
+			config.getFitnessCache().clear();
+		}
+		// Surrogate samples of older steps no longer describe this step's forecast
+		if (config.getSurrogate() != null) {
+			config.getSurrogate().nextStep();
+		}
+		final LongAdder evaluations = new LongAdder();
 		Function<double[], Double> fitness = matrix -> {
 			try {
 				double s = 0;
 //                double s = SimulatedModel.calculateFitness(matrix, curveData, parameters, dataList)[0];
-				double[] ss = jdhSimModel.jdhFitness(matrix, curveData, parameters, dataList);
+				double[] ss = objectives(control.expand(matrix), 0.1, 4.5, curveData, parameters, scenarios, config, evaluations);
 				if (priority == 1) {
 					s = ss[0];
 				} else if (priority == 2) {
@@ -116,37 +256,285 @@ public class OptMethod {
 
 		InvertibleCodec<double[], DoubleGene> codec = Codecs.ofVector(DoubleRange.of(0.1, 4.5), VARIABLES);
 
-		final Engine<DoubleGene, Double> engine = Engine
-				.builder(
-						fitness,
-						codec
-				).populationSize(1000)
+		// The surrogate models all objectives but ranks on the priority objective only
+		final int objective = priority == 1 ? 0 : priority == 2 ? 1 : 2;
+		final Function<double[], double[]> trueObjectives = matrix -> {
+			try {
+				return objectives(control.expand(matrix), 0.1, 4.5, curveData, parameters, scenarios, config, evaluations);
+			} catch (Exception e) {
+				throw new IllegalStateException(e);
+			}
+		};
+		final SurrogateEvaluator<Double> surrogate = config.getSurrogate() == null ? null
+				: new SurrogateEvaluator<>(codec::decode, trueObjectives, y -> y[objective],
+						y -> new double[]{y[objective]}, config.getSurrogate(), config.getSurrogateFraction(), config.getExecutor());
+		final Engine.Builder<DoubleGene, Double> builder = surrogate == null
+				? Engine.builder(fitness, codec)
+				: new Engine.Builder<>(surrogate, codec.encoding());
+		final LocalRefinement refinement = config.getRefinement();
+		if (refinement != null && refinement.getInterval() > 0) {
+			// A round costs candidates x evaluations fitness calls, skipped when it and the next generation no longer fit the budget
+			final double roundGenerations = 1 + (double) refinement.getCandidates() * refinement.getMaxEvaluations() / config.getPopulationSize();
+			builder.mapping(er -> er.generation() % refinement.getInterval() == 0 && deadline.fits(roundGenerations)
+					? refinePopulation(er, codec, f -> new double[]{f}, trueObjectives, y -> new double[]{y[objective]},
+							y -> y[objective], refinement, 0.1, 4.5, config.getExecutor())
+					: er);
+		}
+		final Engine<DoubleGene, Double> engine = builder
+				.populationSize(config.getPopulationSize())
+				.executor(config.getExecutor())
 				.optimize(Optimize.MINIMUM)
 				.alterers(
-						new Mutator<>(0.3),
-						new SinglePointCrossover<>(0.2)
+						new Mutator<>(config.getMutationRate()),
+						new SinglePointCrossover<>(config.getCrossoverRate())
 				).build();
 
-		final EvolutionStatistics<Double, ?> statistics = EvolutionStatistics.ofNumber();
-
-		List<String> fitList = new ArrayList<>();
+		final ConvergenceRecorder convergence = config.getConvergence();
+		if (convergence != null) {
+			convergence.start(1);
+		}
 
-		final Phenotype<DoubleGene, Double> best = engine.stream()
+		final ISeq<Genotype<DoubleGene>> seeds = seeds(config, codec, control, parameters, 0.1, 4.5);
+		final long[] generations = new long[1];
+		final EvolutionResult<DoubleGene, Double> bestGeneration = engine.stream(seeds)
+				.limit(deadline)
 				.limit(bySteadyFitness(200))
-				.limit(20000)
-				.peek(statistics)
+				.limit(config.getMaxGenerations())
+				.peek(er -> generations[0] = er.generation())
 				.peek(er -> {
-					final int generation = (int) er.generation();
-					final String fit = er.population().stream()
-							.map(Phenotype::fitness)
-							.map(Objects::toString)
-							.collect(Collectors.joining(","));
-					fitList.add(fit);
+					if (convergence != null) {
+						convergence.record(er, (value, k) -> value, Double.NaN);
+					}
 				})
-				.collect(EvolutionResult.toBestPhenotype());
+				.collect(EvolutionResult.toBestEvolutionResult());
+		final Phenotype<DoubleGene, Double> best = bestGeneration.bestPhenotype();
+
+		double[] bestGenes = codec.decode(best.genotype());
+		double bestFitness = best.fitness();
+		if (surrogate != null) {
+			final double[][] candidates = bestGeneration.population().stream()
+					.sorted(Comparator.comparing(Phenotype::fitness))
+					.limit(10)
+					.map(pt -> codec.decode(pt.genotype()))
+					.toArray(double[][]::new);
+			final double[][] exact = evaluateAll(candidates, trueObjectives, config.getExecutor());
+			bestFitness = Double.POSITIVE_INFINITY;
+			for (int k = 0; k < candidates.length; k++) {
+				if (exact[k][objective] < bestFitness) {
+					bestFitness = exact[k][objective];
+					bestGenes = candidates[k];
+				}
+			}
+			logger.info(surrogate);
+		}
+		if (refinement != null && !fitsDeadline(deadline, refinement, 1, config)) {
+			logger.info("Local refinement " + refinement + " skipped, it does not fit the time budget");
+		} else if (refinement != null) {
+			final LocalRefinement.Result refined = refinement.refine(bestGenes, trueObjectives, y -> y[objective], 0.1, 4.5);
+			logger.info("Local refinement " + refinement + ": " + bestFitness + " -> " + refined.getValue());
+			if (refined.getValue() < bestFitness) {
+				bestFitness = refined.getValue();
+				bestGenes = refined.getPoint();
+			}
+		}
+		final double[] gateOpen = control.expand(bestGenes);
+		if (config.getWarmStart() != null) {
+			config.getWarmStart().update(Collections.singletonList(gateOpen), generations[0]);
+		}
+		final Termination termination = termination(deadline, generations[0], config);
+		logger.info("GA stopped after " + generations[0] + " generations (" + termination + "), warm start seeds: " + seeds.size()
+				+ ", true evaluations: " + evaluations.sum());
+		if (config.getFitnessCache() != null) {
+			logger.info(config.getFitnessCache());
+		}
+		if (convergence != null) {
+			logger.info("GA convergence: " + convergence.summary());
+		}
+		return new GaResult(gateOpen, bestFitness, generations[0], termination, evaluations.sum());
+
+	}
+
+	/**
+	 * jdhFitness of one decision vector, looked up in the fitness cache when one is configured;
+	 * evaluations counts the vectors that were actually evaluated
+	 */
+	private static double[] objectives(double[] matrix, double min, double max, CurveData curveData, int[] parameters,
+									   List<ArrayList<double[]>> scenarios, OptConfig config, LongAdder evaluations) throws Exception {
+		FitnessCache cache = config.getFitnessCache();
+		if (cache == null) {
+			evaluations.increment();
+			return scenarioObjectives(matrix, curveData, parameters, scenarios, config);
+		}
+		return cache.get(matrix, x -> {
+			// Quantized values may fall just outside the codec range
+			for (int j = 0; j < x.length; j++) {
+				x[j] = Math.min(Math.max(x[j], min), max);
+			}
+			evaluations.increment();
+			return scenarioObjectives(x, curveData, parameters, scenarios, config);
+		});
+	}
+
+	/**
+	 * jdhFitness aggregated over the rainfall scenarios. Scenarios are evaluated in parallel; called
+	 * from a fork/join evaluation task the parallel stream runs on that task's pool.
+	 */
+	private static double[] scenarioObjectives(double[] x, CurveData curveData, int[] parameters,
+											   List<ArrayList<double[]>> scenarios, OptConfig config) throws Exception {
+		if (scenarios.size() == 1) {
+			return jdhSimModel.jdhFitness(x, curveData, parameters, scenarios.get(0));
+		}
+		IntStream indices = IntStream.range(0, scenarios.size());
+		if (config.isParallelScenarios()) {
+			indices = indices.parallel();
+		}
+		double[][] values = indices.mapToObj(k -> {
+			try {
+				return jdhSimModel.jdhFitness(x, curveData, parameters, scenarios.get(k));
+			} catch (Exception e) {
+				throw new IllegalStateException("Scenario " + k, e);
+			}
+		}).toArray(double[][]::new);
+		return config.getScenarioAggregation().aggregate(values);
+	}
+
+	/**
+	 * Refine the best individuals of a generation locally and let them replace the worst ones
+	 *
+	 * @param criteriaOf criteria values of an individual's fitness, all minimized
+	 * @param criteria   criteria values of true objective values
+	 * @param fitness    fitness of true objective values
+	 */
+	private static <C extends Comparable<? super C>> EvolutionResult<DoubleGene, C> refinePopulation(
+			EvolutionResult<DoubleGene, C> result, InvertibleCodec<double[], DoubleGene> codec, Function<C, double[]> criteriaOf,
+			Function<double[], double[]> objectives, UnaryOperator<double[]> criteria, Function<double[], C> fitness,
+			LocalRefinement refinement, double min, double max, Executor executor) {
+		final ISeq<Phenotype<DoubleGene, C>> population = result.population();
+		final double[][] values = population.map(pt -> criteriaOf.apply(pt.fitness())).toArray(new double[0][]);
+		final ToDoubleFunction<double[]> scalarization = scalarization(values);
+		final int[] order = best(values, scalarization, values.length);
+		final int count = Math.min(refinement.getCandidates(), values.length / 2);
+		final double[][] starts = new double[count][];
+		for (int r = 0; r < count; r++) {
+			starts[r] = codec.decode(population.get(order[r]).genotype());
+		}
+		final LocalRefinement.Result[] refined = refinement.refineAll(starts, objectives,
+				y -> scalarization.applyAsDouble(criteria.apply(y)), min, max, executor);
+		final MSeq<Phenotype<DoubleGene, C>> next = population.copy();
+		for (int r = 0; r < count; r++) {
+			next.set(order[values.length - 1 - r], Phenotype.of(codec.encode(refined[r].getPoint()), result.generation(),
+					fitness.apply(refined[r].getObjectives())));
+		}
+		return EvolutionResult.of(Optimize.MINIMUM, next.toISeq(), result.generation(), result.totalGenerations(),
+				result.durations(), result.killCount(), result.invalidCount(), result.alterCount());
+	}
+
+	/**
+	 * Sum of the criteria normalized to the range of the given values, the knee point criterion
+	 */
+	private static ToDoubleFunction<double[]> scalarization(double[][] values) {
+		final int m = values[0].length;
+		final double[] low = new double[m];
+		final double[] range = new double[m];
+		for (int k = 0; k < m; k++) {
+			final int column = k;
+			low[k] = Arrays.stream(values).mapToDouble(v -> v[column]).min().getAsDouble();
+			final double high = Arrays.stream(values).mapToDouble(v -> v[column]).max().getAsDouble();
+			range[k] = high > low[k] ? high - low[k] : 1;
+		}
+		return y -> {
+			double sum = 0;
+			for (int k = 0; k < m; k++) {
+				sum += (y[k] - low[k]) / range[k];
+			}
+			return sum;
+		};
+	}
 
-		double[] gateOpen = codec.decode(best.genotype());
-		return gateOpen;
+	/**
+	 * Indices of the count lowest scalarized values, best first
+	 */
+	private static int[] best(double[][] values, ToDoubleFunction<double[]> scalarization, int count) {
+		return IntStream.range(0, values.length).boxed()
+				.sorted(Comparator.comparingDouble(k -> scalarization.applyAsDouble(values[k])))
+				.limit(count)
+				.mapToInt(Integer::intValue)
+				.toArray();
+	}
 
+	/**
+	 * Objective values of several decision vectors, evaluated concurrently on the executor
+	 */
+	private static double[][] evaluateAll(double[][] xs, Function<double[], double[]> objectives, Executor executor) {
+		final List<CompletableFuture<double[]>> futures = new ArrayList<>(xs.length);
+		for (double[] x : xs) {
+			futures.add(CompletableFuture.supplyAsync(() -> objectives.apply(x), executor));
+		}
+		return futures.stream().map(CompletableFuture::join).toArray(double[][]::new);
+	}
+
+	/**
+	 * Indices of the points no other point dominates (minimization), duplicates are kept once
+	 */
+	private static int[] nonDominated(double[][] points) {
+		final List<Integer> front = new ArrayList<>();
+		for (int i = 0; i < points.length; i++) {
+			boolean dominated = false;
+			for (int j = 0; j < points.length && !dominated; j++) {
+				dominated = j != i && (Hypervolume.dominates(points[j], points[i])
+						|| j < i && Arrays.equals(points[j], points[i]));
+			}
+			if (!dominated) {
+				front.add(i);
+			}
+		}
+		return front.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/**
+	 * Whether a final refinement of candidates starts still fits the time budget, its cost estimated
+	 * in generations from the population size
+	 */
+	private static boolean fitsDeadline(DeadlineLimit deadline, LocalRefinement refinement, int candidates, OptConfig config) {
+		return !deadline.isReached()
+				&& deadline.fits((double) candidates * refinement.getMaxEvaluations() / config.getPopulationSize());
+	}
+
+	private static Termination termination(DeadlineLimit deadline, long generations, OptConfig config) {
+		if (deadline.isReached()) {
+			return Termination.DEADLINE;
+		}
+		return generations >= config.getMaxGenerations() ? Termination.GENERATION_LIMIT : Termination.CONVERGED;
+	}
+
+	/**
+	 * Config's control parameterization, one gene per gate and decision step when none is configured
+	 */
+	private static ControlParameterization parameterization(OptConfig config, int[] parameters) {
+		final int schedule = parameters[3] * parameters[0] / parameters[1];
+		final ControlParameterization control = config.getParameterization() != null
+				? config.getParameterization()
+				: new FullSchedule(parameters[3], parameters[0] / parameters[1]);
+		if (control.expand(new double[control.genotypeLength()]).length != schedule) {
+			throw new IllegalArgumentException("Control parameterization does not expand to " + schedule + " settings");
+		}
+		return control;
+	}
+
+	/**
+	 * Warm start seeds encoded as genotypes, empty without a warm start. Consecutive MPC steps
+	 * are one control interval (parameters[1]) apart, which is one decision step. Seeds are full
+	 * schedules and are compressed to the parameterization's genotype.
+	 */
+	private static ISeq<Genotype<DoubleGene>> seeds(OptConfig config, InvertibleCodec<double[], DoubleGene> codec,
+													ControlParameterization control, int[] parameters, double min, double max) {
+		WarmStart warmStart = config.getWarmStart();
+		if (warmStart == null) {
+			return ISeq.empty();
+		}
+		return warmStart.seeds(parameters[3], 1, min, max).stream()
+				.map(control::compress)
+				.map(codec::encode)
+				.collect(ISeq.toISeq());
 	}
 }
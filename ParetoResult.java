@@ -0,0 +1,69 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Pareto-optimal gate schedules of one MOEA run and their objective values
+ */
+public class ParetoResult {
+
+    private final double[][] solutions;
+    private final double[][] objectives;
+    private final long generations;
+    private final Termination termination;
+    private final long evaluations;
+
+    public ParetoResult(double[][] solutions, double[][] objectives, long generations, Termination termination, long evaluations) {
+        this.solutions = solutions;
+        this.objectives = objectives;
+        this.generations = generations;
+        this.termination = termination;
+        this.evaluations = evaluations;
+    }
+
+    public int size() {
+        return solutions.length;
+    }
+
+    /**
+     * Decoded decision vectors, gate openings in [0, 4.5]
+     */
+    public double[][] getSolutions() {
+        return solutions;
+    }
+
+    /**
+     * The three jdhFitness objective values of each solution
+     */
+    public double[][] getObjectives() {
+        return objectives;
+    }
+
+    public long getGenerations() {
+        return generations;
+    }
+
+    /**
+     * jdhFitness evaluations of the run, without fitness cache hits and surrogate predictions
+     */
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public Termination getTermination() {
+        return termination;
+    }
+
+    /**
+     * False when the deadline or the generation limit cut the run off
+     */
+    public boolean isConverged() {
+        return termination == Termination.CONVERGED;
+    }
+
+    /**
+     * Compromise solution chosen by the given strategy
+     */
+    public double[] compromise(CompromiseSelection selection) {
+        return solutions[selection.select(objectives)];
+    }
+}
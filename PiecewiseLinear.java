@@ -0,0 +1,63 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Piecewise-linear schedule: each gate has settings at evenly spaced knots, the steps in between
+ * are interpolated linearly. Interpolated settings stay within the range of the knot settings.
+ */
+public class PiecewiseLinear implements ControlParameterization {
+
+    private final int gates;
+    private final int steps;
+    private final int knots;
+
+    /**
+     * @param knots knots per gate, the first one at step 0 and the last one at the last step
+     */
+    public PiecewiseLinear(int gates, int steps, int knots) {
+        if (knots < 2 || knots > steps) {
+            throw new IllegalArgumentException("Knots must be in [2, " + steps + "]");
+        }
+        this.gates = gates;
+        this.steps = steps;
+        this.knots = knots;
+    }
+
+    @Override
+    public int genotypeLength() {
+        return gates * knots;
+    }
+
+    @Override
+    public double[] expand(double[] genotype) {
+        double[] schedule = new double[gates * steps];
+        double spacing = (steps - 1.0) / (knots - 1);
+        for (int g = 0; g < gates; g++) {
+            for (int k = 0; k < steps; k++) {
+                double position = k / spacing;
+                int left = Math.min((int) position, knots - 2);
+                double w = position - left;
+                schedule[g * steps + k] = (1 - w) * genotype[g * knots + left] + w * genotype[g * knots + left + 1];
+            }
+        }
+        return schedule;
+    }
+
+    /**
+     * Schedule sampled at the knots, interpolated between the neighbouring steps
+     */
+    @Override
+    public double[] compress(double[] schedule) {
+        double[] genotype = new double[genotypeLength()];
+        double spacing = (steps - 1.0) / (knots - 1);
+        for (int g = 0; g < gates; g++) {
+            for (int j = 0; j < knots; j++) {
+                double position = j * spacing;
+                int left = Math.min((int) position, steps - 2);
+                double w = position - left;
+                genotype[g * knots + j] = (1 - w) * schedule[g * steps + left] + w * schedule[g * steps + left + 1];
+            }
+        }
+        return genotype;
+    }
+}
@@ -0,0 +1,252 @@
+package iwhr.swmm.mpcModel;
+
+import iwhr.swmm.swmmtools.SeriesKey;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * @author fww
+ * Tributaries and the reservoirs they drain into, as scored by FloodPriority. The defaults describe the
+ * Jingdian-Qinting Lake network: Jiefang and Yangting Stream into Jingdian Reservoir, and Qinting Lake.
+ */
+public class PriorityConfig {
+
+    private final Map<String, Reservoir> reservoirs = new LinkedHashMap<>();
+    private final List<Tributary> tributaries = new ArrayList<>();
+    // Weights of the storage share, the lead time and the downstream risk
+    private double storageWeight = 0.135;
+    private double leadTimeWeight = 0.146;
+    private double riskWeight = 0.719;
+
+    /**
+     * A reservoir or lake whose level decides on flood risk
+     */
+    public static final class Reservoir {
+        private final String name;
+        private final SeriesKey level;
+        private final SeriesKey volume;
+        private final double capacity;
+        private final double threshold;
+        private final double resilience;
+
+        /**
+         * @param capacity   storage in m3, the initial volume is subtracted to get the available storage
+         * @param threshold  warning level in m
+         * @param resilience risk term of the downstream area once the level exceeds the threshold
+         */
+        public Reservoir(String name, SeriesKey level, SeriesKey volume, double capacity, double threshold, double resilience) {
+            this.name = name;
+            this.level = level;
+            this.volume = volume;
+            this.capacity = capacity;
+            this.threshold = threshold;
+            this.resilience = resilience;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SeriesKey getLevel() {
+            return level;
+        }
+
+        public SeriesKey getVolume() {
+            return volume;
+        }
+
+        public double getCapacity() {
+            return capacity;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public double getResilience() {
+            return resilience;
+        }
+    }
+
+    /**
+     * A tributary whose inflow fills a reservoir
+     */
+    public static final class Tributary {
+        private final String name;
+        private final SeriesKey inflow;
+        private final Reservoir reservoir;
+
+        public Tributary(String name, SeriesKey inflow, Reservoir reservoir) {
+            this.name = name;
+            this.inflow = inflow;
+            this.reservoir = reservoir;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public SeriesKey getInflow() {
+            return inflow;
+        }
+
+        public Reservoir getReservoir() {
+            return reservoir;
+        }
+    }
+
+    /**
+     * The Jingdian-Qinting Lake network; tributary 1 Jiefang Stream, 2 Yangting Stream, 3 Qinting Lake
+     */
+    public static PriorityConfig defaults() {
+        return new PriorityConfig()
+                .addReservoir("JDH", SeriesKey.of("JDH", "Head"), SeriesKey.of("JDH", "Volume"), 96852, 12.5, 223.24)
+                .addReservoir("QTH", SeriesKey.of("Lake_QTH", "Head"), SeriesKey.of("Lake_QTH", "Volume"), 569015.25, 5.5, 2842.77)
+                .addTributary("JFX", SeriesKey.of("JFX_1480", "TotalInflow"), "JDH")
+                .addTributary("YTX", SeriesKey.of("YTX_x3", "TotalInflow"), "JDH")
+                .addTributary("QTH", SeriesKey.of("Lake_QTH", "TotalInflow"), "QTH");
+    }
+
+    /**
+     * The network of -Dmpc.priority=&lt;properties file&gt;, the defaults without it
+     */
+    public static PriorityConfig fromSystemProperties() throws IOException {
+        String file = System.getProperty("mpc.priority");
+        return file == null ? defaults() : load(new File(file));
+    }
+
+    /**
+     * Read a network from a properties file, e.g.
+     * <pre>
+     * weights = 0.135, 0.146, 0.719
+     * reservoirs = JDH
+     * reservoir.JDH.level = JDH/Head
+     * reservoir.JDH.volume = JDH/Volume
+     * reservoir.JDH.capacity = 96852
+     * reservoir.JDH.threshold = 12.5
+     * reservoir.JDH.resilience = 223.24
+     * tributaries = JFX
+     * tributary.JFX.inflow = JFX_1480/TotalInflow
+     * tributary.JFX.reservoir = JDH
+     * </pre>
+     * Tributaries are numbered in the listed order starting from 1.
+     */
+    public static PriorityConfig load(File file) throws IOException {
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        }
+        PriorityConfig config = new PriorityConfig();
+        String weights = properties.getProperty("weights");
+        if (weights != null) {
+            String[] w = weights.split(",");
+            if (w.length != 3) {
+                throw new IOException("Expected three weights in " + file + ", got " + weights);
+            }
+            config.setWeights(Double.parseDouble(w[0].trim()), Double.parseDouble(w[1].trim()), Double.parseDouble(w[2].trim()));
+        }
+        for (String name : names(properties, "reservoirs", file)) {
+            String prefix = "reservoir." + name + ".";
+            config.addReservoir(name,
+                    SeriesKey.parse(required(properties, prefix + "level", file)),
+                    SeriesKey.parse(required(properties, prefix + "volume", file)),
+                    Double.parseDouble(required(properties, prefix + "capacity", file)),
+                    Double.parseDouble(required(properties, prefix + "threshold", file)),
+                    Double.parseDouble(required(properties, prefix + "resilience", file)));
+        }
+        for (String name : names(properties, "tributaries", file)) {
+            String prefix = "tributary." + name + ".";
+            config.addTributary(name,
+                    SeriesKey.parse(required(properties, prefix + "inflow", file)),
+                    required(properties, prefix + "reservoir", file));
+        }
+        return config;
+    }
+
+    private static String[] names(Properties properties, String key, File file) throws IOException {
+        String[] names = required(properties, key, file).split(",");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].trim();
+        }
+        return names;
+    }
+
+    private static String required(Properties properties, String key, File file) throws IOException {
+        String value = properties.getProperty(key);
+        if (value == null || value.trim().isEmpty()) {
+            throw new IOException("Missing " + key + " in " + file);
+        }
+        return value.trim();
+    }
+
+    public PriorityConfig addReservoir(String name, SeriesKey level, SeriesKey volume,
+                                       double capacity, double threshold, double resilience) {
+        if (reservoirs.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate reservoir " + name);
+        }
+        reservoirs.put(name, new Reservoir(name, level, volume, capacity, threshold, resilience));
+        return this;
+    }
+
+    public PriorityConfig addTributary(String name, SeriesKey inflow, String reservoir) {
+        Reservoir target = reservoirs.get(reservoir);
+        if (target == null) {
+            throw new IllegalArgumentException("Tributary " + name + " drains into unknown reservoir " + reservoir);
+        }
+        tributaries.add(new Tributary(name, inflow, target));
+        return this;
+    }
+
+    public PriorityConfig setWeights(double storageWeight, double leadTimeWeight, double riskWeight) {
+        this.storageWeight = storageWeight;
+        this.leadTimeWeight = leadTimeWeight;
+        this.riskWeight = riskWeight;
+        return this;
+    }
+
+    public List<Reservoir> getReservoirs() {
+        return Collections.unmodifiableList(new ArrayList<>(reservoirs.values()));
+    }
+
+    public List<Tributary> getTributaries() {
+        return Collections.unmodifiableList(tributaries);
+    }
+
+    public double getStorageWeight() {
+        return storageWeight;
+    }
+
+    public double getLeadTimeWeight() {
+        return leadTimeWeight;
+    }
+
+    public double getRiskWeight() {
+        return riskWeight;
+    }
+
+    /**
+     * Every series the scoring reads, to be extracted with the prediction
+     */
+    public SeriesKey[] keys() {
+        Set<SeriesKey> keys = new LinkedHashSet<>();
+        for (Reservoir reservoir : reservoirs.values()) {
+            keys.add(reservoir.level);
+            keys.add(reservoir.volume);
+        }
+        for (Tributary tributary : tributaries) {
+            keys.add(tributary.inflow);
+        }
+        return keys.toArray(new SeriesKey[0]);
+    }
+}
@@ -0,0 +1,72 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Limits the change of each gate's setting between consecutive decision steps, applied to the
+ * schedule of another parameterization. Without an initial setting the first step is free.
+ */
+public class RateLimit implements ControlParameterization {
+
+    private final ControlParameterization control;
+    private final int gates;
+    private final double maxDelta;
+    private final double[] initial;
+
+    /**
+     * @param maxDelta largest change between decision steps, in setting units
+     */
+    public RateLimit(ControlParameterization control, int gates, double maxDelta) {
+        this(control, gates, maxDelta, null);
+    }
+
+    /**
+     * @param initial setting of each gate before the first decision step, e.g. the one applied now
+     */
+    public RateLimit(ControlParameterization control, int gates, double maxDelta, double[] initial) {
+        if (initial != null && initial.length != gates) {
+            throw new IllegalArgumentException("One initial setting per gate expected");
+        }
+        this.control = control;
+        this.gates = gates;
+        this.maxDelta = maxDelta;
+        this.initial = initial == null ? null : initial.clone();
+    }
+
+    /**
+     * Same limit starting from another setting
+     */
+    public RateLimit withInitial(double[] initial) {
+        return new RateLimit(control, gates, maxDelta, initial);
+    }
+
+    @Override
+    public int genotypeLength() {
+        return control.genotypeLength();
+    }
+
+    @Override
+    public double[] expand(double[] genotype) {
+        double[] schedule = control.expand(genotype);
+        int steps = schedule.length / gates;
+        for (int g = 0; g < gates; g++) {
+            for (int k = 0; k < steps; k++) {
+                int i = g * steps + k;
+                double previous;
+                if (k > 0) {
+                    previous = schedule[i - 1];
+                } else if (initial != null) {
+                    previous = initial[g];
+                } else {
+                    continue;
+                }
+                schedule[i] = Math.min(Math.max(schedule[i], previous - maxDelta), previous + maxDelta);
+            }
+        }
+        return schedule;
+    }
+
+    @Override
+    public double[] compress(double[] schedule) {
+        return control.compress(schedule);
+    }
+}
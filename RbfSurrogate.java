@@ -0,0 +1,220 @@
+package iwhr.swmm.optModel;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.CholeskyDecomposition;
+import org.apache.commons.math3.linear.DecompositionSolver;
+import org.apache.commons.math3.linear.NonPositiveDefiniteMatrixException;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * @author fww
+ * Gaussian radial basis function model of the jdhFitness objectives, trained online on true
+ * evaluations. Samples of the current and the previous MPC step are kept in a bounded archive;
+ * the model is refitted by ridge regression on a subset of them as centers. Inputs are scaled by
+ * the full gate opening and outputs are standardized, so one width and one ridge factor fit all
+ * objectives. Safe for concurrent add and predict.
+ */
+public class RbfSurrogate {
+
+    private static final double RIDGE = 1e-6;
+
+    private final int centers;
+    private final int maxSamples;
+    private final double fullScale;
+
+    private final Deque<Sample> archive = new ArrayDeque<>();
+    private long step;
+    // Fitted model, replaced as a whole by fit()
+    private volatile Model model;
+
+    private static final class Sample {
+        final double[] x;
+        final double[] y;
+        final long step;
+
+        Sample(double[] x, double[] y, long step) {
+            this.x = x;
+            this.y = y;
+            this.step = step;
+        }
+    }
+
+    private static final class Model {
+        double[][] centers;
+        double gamma;
+        // Weights per output, the last one is the bias
+        double[][] weights;
+        double[] mean;
+        double[] scale;
+    }
+
+    /**
+     * @param centers    number of basis functions
+     * @param maxSamples archive size
+     * @param fullScale  full gate opening, inputs are divided by it
+     */
+    public RbfSurrogate(int centers, int maxSamples, double fullScale) {
+        this.centers = centers;
+        this.maxSamples = Math.max(maxSamples, centers);
+        this.fullScale = fullScale;
+    }
+
+    /**
+     * Start a new MPC step: samples older than the previous step are dropped
+     */
+    public synchronized void nextStep() {
+        step++;
+        archive.removeIf(sample -> sample.step < step - 1);
+        model = null;
+    }
+
+    /**
+     * Record a true evaluation, the oldest sample is dropped when the archive is full
+     */
+    public synchronized void add(double[] x, double[] objectives) {
+        if (archive.size() == maxSamples) {
+            archive.removeFirst();
+        }
+        double[] scaled = new double[x.length];
+        for (int j = 0; j < x.length; j++) {
+            scaled[j] = x[j] / fullScale;
+        }
+        archive.addLast(new Sample(scaled, objectives.clone(), step));
+    }
+
+    public synchronized int samples() {
+        return archive.size();
+    }
+
+    /**
+     * True once a model has been fitted
+     */
+    public boolean isReady() {
+        return model != null;
+    }
+
+    /**
+     * Refit the model on the archive; needs at least twice as many samples as centers
+     *
+     * @return false if there are too few samples or the system is singular
+     */
+    public boolean fit() {
+        Sample[] samples;
+        synchronized (this) {
+            samples = archive.toArray(new Sample[0]);
+        }
+        int n = samples.length;
+        if (n < 2 * centers) {
+            return false;
+        }
+        int outputs = samples[0].y.length;
+        Model next = new Model();
+
+        // Centers evenly spread over the archive, which covers both steps and all generations
+        next.centers = new double[centers][];
+        for (int c = 0; c < centers; c++) {
+            next.centers[c] = samples[(int) ((long) c * n / centers)].x;
+        }
+        // Width from the largest center distance: sigma = dMax / sqrt(2 * centers)
+        double dMaxSquared = 0;
+        for (int a = 0; a < centers; a++) {
+            for (int b = a + 1; b < centers; b++) {
+                dMaxSquared = Math.max(dMaxSquared, squaredDistance(next.centers[a], next.centers[b]));
+            }
+        }
+        next.gamma = dMaxSquared > 0 ? centers / dMaxSquared : 1;
+
+        next.mean = new double[outputs];
+        next.scale = new double[outputs];
+        for (Sample sample : samples) {
+            for (int k = 0; k < outputs; k++) {
+                next.mean[k] += sample.y[k] / n;
+            }
+        }
+        for (Sample sample : samples) {
+            for (int k = 0; k < outputs; k++) {
+                double d = sample.y[k] - next.mean[k];
+                next.scale[k] += d * d / n;
+            }
+        }
+        for (int k = 0; k < outputs; k++) {
+            next.scale[k] = next.scale[k] > 0 ? Math.sqrt(next.scale[k]) : 1;
+        }
+
+        // Normal equations (Phi^T Phi + ridge I) w = Phi^T y with a bias column
+        int m = centers + 1;
+        double[][] normal = new double[m][m];
+        double[][] rhs = new double[m][outputs];
+        double[] phi = new double[m];
+        for (Sample sample : samples) {
+            basis(next, sample.x, phi);
+            for (int a = 0; a < m; a++) {
+                for (int b = a; b < m; b++) {
+                    normal[a][b] += phi[a] * phi[b];
+                }
+                for (int k = 0; k < outputs; k++) {
+                    rhs[a][k] += phi[a] * (sample.y[k] - next.mean[k]) / next.scale[k];
+                }
+            }
+        }
+        for (int a = 0; a < m; a++) {
+            normal[a][a] += RIDGE * n;
+            for (int b = 0; b < a; b++) {
+                normal[a][b] = normal[b][a];
+            }
+        }
+        try {
+            DecompositionSolver solver = new CholeskyDecomposition(new Array2DRowRealMatrix(normal, false)).getSolver();
+            RealMatrix solution = solver.solve(new Array2DRowRealMatrix(rhs, false));
+            next.weights = solution.transpose().getData();
+        } catch (NonPositiveDefiniteMatrixException e) {
+            return false;
+        }
+        model = next;
+        return true;
+    }
+
+    /**
+     * Predicted objectives, null before the first successful fit
+     */
+    public double[] predict(double[] x) {
+        Model current = model;
+        if (current == null) {
+            return null;
+        }
+        double[] scaled = new double[x.length];
+        for (int j = 0; j < x.length; j++) {
+            scaled[j] = x[j] / fullScale;
+        }
+        double[] phi = new double[centers + 1];
+        basis(current, scaled, phi);
+        double[] y = new double[current.weights.length];
+        for (int k = 0; k < y.length; k++) {
+            double sum = 0;
+            for (int c = 0; c < phi.length; c++) {
+                sum += current.weights[k][c] * phi[c];
+            }
+            y[k] = current.mean[k] + sum * current.scale[k];
+        }
+        return y;
+    }
+
+    private static void basis(Model model, double[] x, double[] phi) {
+        for (int c = 0; c < model.centers.length; c++) {
+            phi[c] = Math.exp(-model.gamma * squaredDistance(x, model.centers[c]));
+        }
+        phi[model.centers.length] = 1;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        double sum = 0;
+        for (int j = 0; j < a.length; j++) {
+            double d = a[j] - b[j];
+            sum += d * d;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,97 @@
+package iwhr.swmm.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author fww
+ * Line-oriented log file that is rolled over once it would exceed a size limit: file is renamed
+ * to file.1, file.1 to file.2 and so on, the oldest backup is deleted. Each line is flushed, so
+ * the file can be tailed by monitoring. An existing file is appended to.
+ */
+public class RollingFileWriter implements Closeable {
+
+    private final File file;
+    private final long maxBytes;
+    private final int backups;
+    private final String header;
+
+    private Writer writer;
+    private long size;
+
+    /**
+     * @param maxBytes size limit of one file
+     * @param backups  rolled files kept besides the current one
+     * @param header   first line of every new file, null for none
+     */
+    public RollingFileWriter(File file, long maxBytes, int backups, String header) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.backups = backups;
+        this.header = header;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        open();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public synchronized void writeLine(String line) throws IOException {
+        long bytes = line.getBytes(StandardCharsets.UTF_8).length + 1;
+        if (size > 0 && size + bytes > maxBytes) {
+            roll();
+        }
+        writer.write(line);
+        writer.write('\n');
+        writer.flush();
+        size += bytes;
+    }
+
+    private void open() throws IOException {
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if (size == 0 && header != null) {
+            writer.write(header);
+            writer.write('\n');
+            writer.flush();
+            size = header.getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+    }
+
+    private void roll() throws IOException {
+        writer.close();
+        File oldest = backup(backups);
+        if (oldest.exists() && !oldest.delete()) {
+            throw new IOException("Cannot delete " + oldest);
+        }
+        for (int k = backups - 1; k >= 1; k--) {
+            File from = backup(k);
+            if (from.exists() && !from.renameTo(backup(k + 1))) {
+                throw new IOException("Cannot rename " + from);
+            }
+        }
+        if (backups > 0 ? !file.renameTo(backup(1)) : !file.delete()) {
+            throw new IOException("Cannot roll over " + file);
+        }
+        open();
+    }
+
+    private File backup(int k) {
+        return new File(file.getPath() + "." + k);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
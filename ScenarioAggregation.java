@@ -0,0 +1,107 @@
+package iwhr.swmm.optModel;
+
+import java.util.Arrays;
+
+/**
+ * @author fww
+ * Aggregation of jdhFitness objectives over rainfall scenarios; each objective is
+ * aggregated on its own and all objectives are minimized
+ */
+public final class ScenarioAggregation {
+
+    private enum Type {EXPECTED, WORST_CASE, CVAR}
+
+    private final Type type;
+    private final double alpha;
+
+    private ScenarioAggregation(Type type, double alpha) {
+        this.type = type;
+        this.alpha = alpha;
+    }
+
+    /**
+     * Mean over all scenarios
+     */
+    public static ScenarioAggregation expected() {
+        return new ScenarioAggregation(Type.EXPECTED, 0);
+    }
+
+    /**
+     * Worst scenario
+     */
+    public static ScenarioAggregation worstCase() {
+        return new ScenarioAggregation(Type.WORST_CASE, 1);
+    }
+
+    /**
+     * Conditional value at risk: mean of the worst (1 - alpha) share of the scenarios
+     *
+     * @param alpha confidence level in [0, 1), e.g. 0.8 averages the worst 20 %
+     */
+    public static ScenarioAggregation cvar(double alpha) {
+        if (alpha < 0 || alpha >= 1) {
+            throw new IllegalArgumentException("alpha must be in [0, 1)");
+        }
+        return new ScenarioAggregation(Type.CVAR, alpha);
+    }
+
+    /**
+     * Parse expected, worst or cvar:alpha (e.g. cvar:0.8)
+     */
+    public static ScenarioAggregation of(String value) {
+        if (value.startsWith("cvar")) {
+            int colon = value.indexOf(':');
+            return cvar(colon < 0 ? 0.8 : Double.parseDouble(value.substring(colon + 1)));
+        }
+        switch (value) {
+            case "expected":
+                return expected();
+            case "worst":
+                return worstCase();
+            default:
+                throw new IllegalArgumentException("Unknown scenario aggregation: " + value);
+        }
+    }
+
+    /**
+     * @param values objective values, one row per scenario
+     * @return aggregated objective values
+     */
+    public double[] aggregate(double[][] values) {
+        int n = values.length;
+        int m = values[0].length;
+        double[] result = new double[m];
+        double[] column = new double[n];
+        for (int k = 0; k < m; k++) {
+            for (int s = 0; s < n; s++) {
+                column[s] = values[s][k];
+            }
+            switch (type) {
+                case EXPECTED:
+                    result[k] = mean(column, 0, n);
+                    break;
+                case WORST_CASE:
+                    result[k] = Arrays.stream(column).max().getAsDouble();
+                    break;
+                default:
+                    Arrays.sort(column);
+                    int tail = Math.max(1, (int) Math.ceil((1 - alpha) * n));
+                    result[k] = mean(column, n - tail, n);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.CVAR ? "cvar:" + alpha : type.name().toLowerCase();
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum / (to - from);
+    }
+}
@@ -0,0 +1,97 @@
+package iwhr.swmm.swmmtools;
+
+import java.util.Locale;
+
+/**
+ * @author fww
+ * Identifies one result series: a SWMM element ID and a reporting variable such as Head,
+ * TotalInflow, Volume or Flow. Element IDs are case-sensitive like in SWMM, variable names are not.
+ */
+public final class SeriesKey {
+
+    private final String element;
+    private final String variable;
+
+    private SeriesKey(String element, String variable) {
+        this.element = element;
+        this.variable = variable;
+    }
+
+    public static SeriesKey of(String element, String variable) {
+        if (element == null || variable == null) {
+            throw new IllegalArgumentException("element and variable are required");
+        }
+        return new SeriesKey(element, variable);
+    }
+
+    /**
+     * Keys of parallel element and variable arrays, as BatchReadResult.readOutFile takes them
+     */
+    public static SeriesKey[] of(String[] elements, String[] variables) {
+        if (elements.length != variables.length) {
+            throw new IllegalArgumentException("elements and variables must have the same length");
+        }
+        SeriesKey[] keys = new SeriesKey[elements.length];
+        for (int k = 0; k < keys.length; k++) {
+            keys[k] = of(elements[k], variables[k]);
+        }
+        return keys;
+    }
+
+    /**
+     * Key written as element/variable, e.g. JDH/Head; element IDs may contain further slashes
+     */
+    public static SeriesKey parse(String text) {
+        int slash = text.lastIndexOf('/');
+        if (slash <= 0 || slash == text.length() - 1) {
+            throw new IllegalArgumentException("Expected element/variable, got " + text);
+        }
+        return of(text.substring(0, slash).trim(), text.substring(slash + 1).trim());
+    }
+
+    public static String[] elements(SeriesKey[] keys) {
+        String[] elements = new String[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            elements[k] = keys[k].element;
+        }
+        return elements;
+    }
+
+    public static String[] variables(SeriesKey[] keys) {
+        String[] variables = new String[keys.length];
+        for (int k = 0; k < keys.length; k++) {
+            variables[k] = keys[k].variable;
+        }
+        return variables;
+    }
+
+    public String getElement() {
+        return element;
+    }
+
+    public String getVariable() {
+        return variable;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SeriesKey)) {
+            return false;
+        }
+        SeriesKey other = (SeriesKey) o;
+        return element.equals(other.element) && variable.equalsIgnoreCase(other.variable);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * element.hashCode() + variable.toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return element + "/" + variable;
+    }
+}
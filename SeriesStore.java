@@ -0,0 +1,243 @@
+package iwhr.swmm.swmmtools;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author fww
+ * Immutable columnar store of equally long result series keyed by (element, variable), e.g.
+ * one prediction run. Each series is a primitive column, on the heap or off-heap in one direct
+ * buffer; max, the last argmax and cumulative volumes are computed once when the store is built.
+ * Being immutable, one store can be shared by any number of concurrent readers without copying.
+ */
+public final class SeriesStore {
+
+    private final SeriesKey[] keys;
+    private final Map<SeriesKey, Integer> index;
+    private final int length;
+    private final double stepSeconds;
+
+    // Values and running volumes, either on the heap (one array per series) or in direct buffers
+    private final double[][] heap;
+    private final double[][] heapCumulative;
+    private final DoubleBuffer direct;
+    private final DoubleBuffer directCumulative;
+
+    private final double[] max;
+    private final int[] argmax;
+
+    private SeriesStore(SeriesKey[] keys, double[][] columns, double stepSeconds, boolean offHeap) {
+        this.keys = keys;
+        this.length = columns.length == 0 ? 0 : columns[0].length;
+        this.stepSeconds = stepSeconds;
+        this.index = new HashMap<>(keys.length * 2);
+        for (int c = 0; c < keys.length; c++) {
+            if (index.put(keys[c], c) != null) {
+                throw new IllegalArgumentException("Duplicate series " + keys[c]);
+            }
+            if (columns[c].length != length) {
+                throw new IllegalArgumentException("Series " + keys[c] + " has " + columns[c].length + " values, expected " + length);
+            }
+        }
+
+        max = new double[keys.length];
+        argmax = new int[keys.length];
+        double[][] cumulative = new double[keys.length][length];
+        // One pass per series for all aggregates
+        for (int c = 0; c < keys.length; c++) {
+            double[] values = columns[c];
+            double m = Double.NEGATIVE_INFINITY;
+            int at = -1;
+            double sum = 0;
+            for (int t = 0; t < length; t++) {
+                double value = values[t];
+                if (value >= m) {
+                    m = value;
+                    at = t;
+                }
+                sum += value;
+                cumulative[c][t] = sum * stepSeconds;
+            }
+            max[c] = m;
+            argmax[c] = at;
+        }
+
+        if (offHeap) {
+            direct = allocate(columns);
+            directCumulative = allocate(cumulative);
+            heap = null;
+            heapCumulative = null;
+        } else {
+            heap = columns;
+            heapCumulative = cumulative;
+            direct = null;
+            directCumulative = null;
+        }
+    }
+
+    private static DoubleBuffer allocate(double[][] columns) {
+        int length = columns.length == 0 ? 0 : columns[0].length;
+        DoubleBuffer buffer = ByteBuffer.allocateDirect(columns.length * length * 8)
+                .order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        for (double[] column : columns) {
+            buffer.put(column);
+        }
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Store that takes over the given arrays without copying; they must not be modified afterwards
+     *
+     * @param series      one array per key, all of the same length
+     * @param stepSeconds time between two values, the unit of the volumes
+     */
+    public static SeriesStore of(SeriesKey[] keys, double[][] series, double stepSeconds) {
+        if (keys.length != series.length) {
+            throw new IllegalArgumentException(keys.length + " keys for " + series.length + " series");
+        }
+        return new SeriesStore(keys.clone(), series.clone(), stepSeconds, false);
+    }
+
+    public static Builder builder(double stepSeconds) {
+        return new Builder(stepSeconds);
+    }
+
+    /**
+     * Collects copies of series for a new store
+     */
+    public static final class Builder {
+        private final double stepSeconds;
+        private final Map<SeriesKey, double[]> series = new LinkedHashMap<>();
+        private boolean offHeap;
+
+        private Builder(double stepSeconds) {
+            this.stepSeconds = stepSeconds;
+        }
+
+        public Builder put(SeriesKey key, double[] values) {
+            series.put(key, values.clone());
+            return this;
+        }
+
+        /**
+         * Keep the values in direct memory, e.g. for many long series; asDataList then copies
+         */
+        public Builder offHeap(boolean offHeap) {
+            this.offHeap = offHeap;
+            return this;
+        }
+
+        public SeriesStore build() {
+            return new SeriesStore(series.keySet().toArray(new SeriesKey[0]),
+                    series.values().toArray(new double[0][]), stepSeconds, offHeap);
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public double stepSeconds() {
+        return stepSeconds;
+    }
+
+    public boolean isOffHeap() {
+        return direct != null;
+    }
+
+    SeriesKey[] keys() {
+        return keys;
+    }
+
+    public SeriesKey[] getKeys() {
+        return keys.clone();
+    }
+
+    public boolean contains(SeriesKey key) {
+        return index.containsKey(key);
+    }
+
+    public SeriesView series(SeriesKey key) {
+        return new SeriesView(this, column(key), 0, length);
+    }
+
+    /**
+     * Values [from, to) of one series without copying, e.g. the prediction window
+     */
+    public SeriesView slice(SeriesKey key, int from, int to) {
+        return new SeriesView(this, column(key), from, to);
+    }
+
+    public double get(SeriesKey key, int t) {
+        return value(column(key), t);
+    }
+
+    public double max(SeriesKey key) {
+        return max[column(key)];
+    }
+
+    /**
+     * Index of the last occurrence of the series maximum
+     */
+    public int argmax(SeriesKey key) {
+        return argmax[column(key)];
+    }
+
+    /**
+     * Sum of all values times the step length
+     */
+    public double volume(SeriesKey key) {
+        return volume(column(key), 0, length);
+    }
+
+    /**
+     * Series in the given order as the positional list jdhFitness reads. On the heap the store's
+     * own arrays are returned without copying, and readers must not modify them.
+     */
+    public ArrayList<double[]> asDataList(SeriesKey... layout) {
+        ArrayList<double[]> dataList = new ArrayList<>(layout.length);
+        for (SeriesKey key : layout) {
+            int c = column(key);
+            dataList.add(heap != null ? heap[c] : series(key).toArray());
+        }
+        return dataList;
+    }
+
+    int column(SeriesKey key) {
+        Integer c = index.get(key);
+        if (c == null) {
+            throw new IllegalArgumentException("No series " + key + " in " + Arrays.toString(keys));
+        }
+        return c;
+    }
+
+    double value(int column, int t) {
+        return heap != null ? heap[column][t] : direct.get(column * length + t);
+    }
+
+    double max(int column) {
+        return max[column];
+    }
+
+    int argmax(int column) {
+        return argmax[column];
+    }
+
+    double volume(int column, int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        double end = cumulative(column, to - 1);
+        return from == 0 ? end : end - cumulative(column, from - 1);
+    }
+
+    private double cumulative(int column, int t) {
+        return heapCumulative != null ? heapCumulative[column][t] : directCumulative.get(column * length + t);
+    }
+}
@@ -0,0 +1,105 @@
+package iwhr.swmm.swmmtools;
+
+/**
+ * @author fww
+ * Read-only window [from, to) of one series of a SeriesStore; no values are copied. Aggregates
+ * of a full series come precomputed from the store, volumes of any window from its cumulative sums.
+ */
+public final class SeriesView {
+
+    private final SeriesStore store;
+    private final int column;
+    private final int from;
+    private final int to;
+
+    SeriesView(SeriesStore store, int column, int from, int to) {
+        if (from < 0 || to > store.length() || from > to) {
+            throw new IndexOutOfBoundsException("Window [" + from + ", " + to + ") of " + store.length() + " values");
+        }
+        this.store = store;
+        this.column = column;
+        this.from = from;
+        this.to = to;
+    }
+
+    public SeriesKey getKey() {
+        return store.keys()[column];
+    }
+
+    public int length() {
+        return to - from;
+    }
+
+    /**
+     * Time between two values in seconds
+     */
+    public double stepSeconds() {
+        return store.stepSeconds();
+    }
+
+    /**
+     * Value at index i of the window
+     */
+    public double get(int i) {
+        if (i < 0 || i >= to - from) {
+            throw new IndexOutOfBoundsException("Index " + i + " of " + (to - from) + " values");
+        }
+        return store.value(column, from + i);
+    }
+
+    /**
+     * Sub-window relative to this one, also without copying
+     */
+    public SeriesView slice(int start, int end) {
+        return new SeriesView(store, column, from + start, from + end);
+    }
+
+    public double max() {
+        if (isFull()) {
+            return store.max(column);
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        for (int t = from; t < to; t++) {
+            max = Math.max(max, store.value(column, t));
+        }
+        return max;
+    }
+
+    /**
+     * Index of the last occurrence of the maximum within the window
+     */
+    public int argmax() {
+        if (isFull()) {
+            return store.argmax(column);
+        }
+        double max = Double.NEGATIVE_INFINITY;
+        int index = -1;
+        for (int t = from; t < to; t++) {
+            double value = store.value(column, t);
+            if (value >= max) {
+                max = value;
+                index = t - from;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sum of the values times the step length, e.g. m3 of a flow in m3/s
+     */
+    public double volume() {
+        return store.volume(column, from, to);
+    }
+
+    public double[] toArray() {
+        double[] values = new double[to - from];
+        for (int t = from; t < to; t++) {
+            values[t - from] = store.value(column, t);
+        }
+        return values;
+    }
+
+    private boolean isFull() {
+        return from == 0 && to == store.length();
+    }
+}
@@ -0,0 +1,83 @@
+package iwhr.swmm.element;
+
+import iwhr.swmm.mpcModel.MpcMetrics;
+import iwhr.swmm.mpcModel.MpcPhase;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.util.DoubleRingBuffer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * @author fww
+ * Run a SWMM model and extract result series, either through the SWMM wrapper and the
+ * binary OUT file (default) or through the stepwise in-process engine (-Dmpc.engine=stepwise)
+ */
+public class Simulation {
+
+    public static final boolean STEPWISE_ENGINE = "stepwise".equals(System.getProperty("mpc.engine"));
+
+    // Report step of the OUT file and sample interval of the stepwise engine
+    public static final int REPORT_MINUTES = 5;
+
+    public static void run(File swmmFile) throws IOException {
+        if (STEPWISE_ENGINE) {
+            try (SwmmEngine engine = new SwmmEngine(swmmFile)) {
+                engine.run(null);
+            }
+        } else {
+            SWMM.initialize(swmmFile);
+            SWMM.simulate(swmmFile);
+        }
+    }
+
+    /**
+     * Run the model and return one series per requested (id, variable) pair
+     *
+     * @param minutes simulated duration, sizes the stepwise engine's buffers
+     */
+    public static double[][] run(File swmmFile, String[] ids, String[] variables, int minutes) throws IOException {
+        return run(swmmFile, ids, variables, minutes, null);
+    }
+
+    /**
+     * Run the model and return one series per requested (id, variable) pair, timing
+     * initialization, simulation and result extraction
+     *
+     * @param minutes simulated duration, sizes the stepwise engine's buffers
+     * @param step    MPC step the phases are added to, null to not time them
+     */
+    public static double[][] run(File swmmFile, String[] ids, String[] variables, int minutes, MpcMetrics.Step step) throws IOException {
+        long mark = System.nanoTime();
+        if (!STEPWISE_ENGINE) {
+            SWMM.initialize(swmmFile);
+            mark = lap(step, MpcPhase.SWMM_INITIALIZE, mark);
+            SWMM.simulate(swmmFile);
+            mark = lap(step, MpcPhase.SIMULATE, mark);
+            double[][] series = BatchReadResult.readOutFile(swmmFile, ids, variables);
+            lap(step, MpcPhase.RESULT_EXTRACTION, mark);
+            return series;
+        }
+        try (SwmmEngine engine = new SwmmEngine(swmmFile)) {
+            engine.setSampleMinutes(REPORT_MINUTES);
+            DoubleRingBuffer[] buffers = new DoubleRingBuffer[ids.length];
+            for (int k = 0; k < ids.length; k++) {
+                buffers[k] = engine.record(ids[k], variables[k], minutes / REPORT_MINUTES + 1);
+            }
+            engine.start(false);
+            mark = lap(step, MpcPhase.SWMM_INITIALIZE, mark);
+            engine.run(null);
+            mark = lap(step, MpcPhase.SIMULATE, mark);
+            double[][] series = new double[ids.length][];
+            for (int k = 0; k < ids.length; k++) {
+                series[k] = buffers[k].toArray();
+            }
+            lap(step, MpcPhase.RESULT_EXTRACTION, mark);
+            return series;
+        }
+    }
+
+    private static long lap(MpcMetrics.Step step, MpcPhase phase, long mark) {
+        return step == null ? System.nanoTime() : step.lap(phase, mark);
+    }
+}
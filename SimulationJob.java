@@ -0,0 +1,77 @@
+package iwhr.swmm.element;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author fww
+ * One SWMM run for a worker process: the complete INP text and the series to extract
+ */
+public class SimulationJob {
+
+    private final String inpText;
+    private final String[] ids;
+    private final String[] variables;
+    private final int minutes;
+
+    /**
+     * @param inpText   model to run, file references in it are resolved against the worker's
+     *                  working directory (the model directory), hot start paths should be absolute
+     * @param ids       element IDs of the extracted series
+     * @param variables variable of each extracted series
+     * @param minutes   simulated duration
+     */
+    public SimulationJob(String inpText, String[] ids, String[] variables, int minutes) {
+        if (ids.length != variables.length) {
+            throw new IllegalArgumentException("ids and variables must have the same length");
+        }
+        this.inpText = inpText;
+        this.ids = ids;
+        this.variables = variables;
+        this.minutes = minutes;
+    }
+
+    public String getInpText() {
+        return inpText;
+    }
+
+    public String[] getIds() {
+        return ids;
+    }
+
+    public String[] getVariables() {
+        return variables;
+    }
+
+    public int getMinutes() {
+        return minutes;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        byte[] text = inpText.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(text.length);
+        out.write(text);
+        out.writeInt(minutes);
+        out.writeInt(ids.length);
+        for (int k = 0; k < ids.length; k++) {
+            out.writeUTF(ids[k]);
+            out.writeUTF(variables[k]);
+        }
+    }
+
+    static SimulationJob read(DataInputStream in) throws IOException {
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        int minutes = in.readInt();
+        int n = in.readInt();
+        String[] ids = new String[n];
+        String[] variables = new String[n];
+        for (int k = 0; k < n; k++) {
+            ids[k] = in.readUTF();
+            variables[k] = in.readUTF();
+        }
+        return new SimulationJob(new String(text, StandardCharsets.UTF_8), ids, variables, minutes);
+    }
+}
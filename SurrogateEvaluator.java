@@ -0,0 +1,179 @@
+package iwhr.swmm.optModel;
+
+import io.jenetics.DoubleGene;
+import io.jenetics.Genotype;
+import io.jenetics.Phenotype;
+import io.jenetics.engine.Evaluator;
+import io.jenetics.util.ISeq;
+import io.jenetics.util.Seq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * @author fww
+ * Jenetics evaluator that pre-screens new individuals with an RbfSurrogate. The surrogate is
+ * refitted before every generation; the most promising fraction of the new individuals, ranked by
+ * how many others dominate their predicted objectives, gets the true fitness and feeds the
+ * surrogate, the rest keeps the predicted fitness. Until a surrogate can be fitted every individual
+ * is evaluated. Results that leave the optimizer have to be re-evaluated, since they may carry
+ * predicted fitness.
+ */
+public class SurrogateEvaluator<C extends Comparable<? super C>> implements Evaluator<DoubleGene, C> {
+
+    private final Function<Genotype<DoubleGene>, double[]> decoder;
+    private final Function<double[], double[]> objectives;
+    private final Function<double[], C> fitness;
+    private final UnaryOperator<double[]> criteria;
+    private final RbfSurrogate surrogate;
+    private final double fraction;
+    private final Executor executor;
+
+    private final LongAdder trueEvaluations = new LongAdder();
+    private final LongAdder screened = new LongAdder();
+    // Relative prediction error of the truly evaluated individuals
+    private final DoubleAdder error = new DoubleAdder();
+    private final LongAdder predictions = new LongAdder();
+
+    /**
+     * @param decoder    genotype to decision vector
+     * @param objectives true objective values of a decision vector
+     * @param fitness    fitness of the optimizer from objective values
+     * @param criteria   objective values used for ranking, all minimized
+     * @param surrogate  model shared across MPC steps
+     * @param fraction   share of the new individuals that is truly evaluated
+     * @param executor   executor of the true evaluations
+     */
+    public SurrogateEvaluator(Function<Genotype<DoubleGene>, double[]> decoder, Function<double[], double[]> objectives,
+                              Function<double[], C> fitness, UnaryOperator<double[]> criteria,
+                              RbfSurrogate surrogate, double fraction, Executor executor) {
+        this.decoder = decoder;
+        this.objectives = objectives;
+        this.fitness = fitness;
+        this.criteria = criteria;
+        this.surrogate = surrogate;
+        this.fraction = fraction;
+        this.executor = executor;
+    }
+
+    @Override
+    public ISeq<Phenotype<DoubleGene, C>> eval(Seq<Phenotype<DoubleGene, C>> population) {
+        List<Phenotype<DoubleGene, C>> result = new ArrayList<>(population.size());
+        List<Phenotype<DoubleGene, C>> pending = new ArrayList<>();
+        for (Phenotype<DoubleGene, C> pt : population) {
+            if (pt.isEvaluated()) {
+                result.add(pt);
+            } else {
+                pending.add(pt);
+            }
+        }
+        int n = pending.size();
+        if (n == 0) {
+            return population.asISeq();
+        }
+        double[][] xs = new double[n][];
+        for (int i = 0; i < n; i++) {
+            xs[i] = decoder.apply(pending.get(i).genotype());
+        }
+
+        double[][] predicted = new double[n][];
+        boolean[] exact = new boolean[n];
+        if (surrogate.fit()) {
+            for (int i = 0; i < n; i++) {
+                predicted[i] = surrogate.predict(xs[i]);
+            }
+            Integer[] order = rank(predicted);
+            int budget = Math.max(1, (int) Math.ceil(fraction * n));
+            for (int r = 0; r < budget; r++) {
+                exact[order[r]] = true;
+            }
+        } else {
+            Arrays.fill(exact, true);
+        }
+
+        List<CompletableFuture<double[]>> futures = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            final double[] x = xs[i];
+            futures.add(exact[i] ? CompletableFuture.supplyAsync(() -> objectives.apply(x), executor) : null);
+        }
+        for (int i = 0; i < n; i++) {
+            double[] y;
+            if (exact[i]) {
+                y = futures.get(i).join();
+                surrogate.add(xs[i], y);
+                trueEvaluations.increment();
+                if (predicted[i] != null) {
+                    for (int k = 0; k < y.length; k++) {
+                        error.add(Math.abs(predicted[i][k] - y[k]) / Math.max(Math.abs(y[k]), 1e-9) / y.length);
+                    }
+                    predictions.increment();
+                }
+            } else {
+                y = predicted[i];
+                screened.increment();
+            }
+            result.add(pending.get(i).withFitness(fitness.apply(y)));
+        }
+        return ISeq.of(result);
+    }
+
+    /**
+     * Indices ordered by the number of predictions dominating them, best first
+     */
+    private Integer[] rank(double[][] predicted) {
+        int n = predicted.length;
+        double[][] values = new double[n][];
+        for (int i = 0; i < n; i++) {
+            values[i] = criteria.apply(predicted[i]);
+        }
+        int[] dominatedBy = new int[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                if (i != j && Hypervolume.dominates(values[j], values[i])) {
+                    dominatedBy[i]++;
+                }
+            }
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> dominatedBy[i]));
+        return order;
+    }
+
+    public long getTrueEvaluations() {
+        return trueEvaluations.sum();
+    }
+
+    /**
+     * Individuals that kept their predicted fitness
+     */
+    public long getScreened() {
+        return screened.sum();
+    }
+
+    /**
+     * Mean relative prediction error of the truly evaluated individuals
+     */
+    public double getPredictionError() {
+        long count = predictions.sum();
+        return count == 0 ? Double.NaN : error.sum() / count;
+    }
+
+    @Override
+    public String toString() {
+        long total = getTrueEvaluations() + getScreened();
+        return String.format("Surrogate: true evaluations %d of %d (%.1f%% saved), prediction error %.3f, archive %d",
+                getTrueEvaluations(), total, total == 0 ? 0.0 : 100.0 * getScreened() / total,
+                getPredictionError(), surrogate.samples());
+    }
+}
@@ -0,0 +1,245 @@
+package iwhr.swmm.element;
+
+import com.sun.jna.ptr.DoubleByReference;
+import iwhr.swmm.util.DoubleRingBuffer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author fww
+ * Step-wise in-process SWMM run. Selected node and link results are sampled into ring
+ * buffers while the engine runs and link settings can be changed between steps, so a
+ * run needs no binary OUT file. The native engine keeps global state: only one
+ * SwmmEngine can be open per JVM.
+ */
+public class SwmmEngine implements Closeable {
+
+    /**
+     * Called after every routing step, e.g. to adjust gate settings in closed loop
+     */
+    @FunctionalInterface
+    public interface StepListener {
+        void afterStep(SwmmEngine engine, double elapsedMinutes) throws IOException;
+    }
+
+    private static final AtomicBoolean OPEN = new AtomicBoolean();
+
+    private final SwmmLibrary swmm = SwmmLibrary.INSTANCE;
+    private final DoubleByReference elapsed = new DoubleByReference();
+    private final Map<String, DoubleRingBuffer> series = new LinkedHashMap<>();
+    private final List<int[]> probes = new ArrayList<>(); // {property, index}
+    private final List<DoubleRingBuffer> buffers = new ArrayList<>();
+    private double sampleMinutes = 5;
+    private double nextSample;
+    private double totalMinutes;
+    private double elapsedMinutes;
+    private boolean started;
+    private boolean closed;
+
+    /**
+     * Open a model; the report file is written beside the INP file
+     */
+    public SwmmEngine(File inpFile) throws IOException {
+        if (!OPEN.compareAndSet(false, true)) {
+            throw new IllegalStateException("Another SWMM engine is open in this JVM");
+        }
+        String path = inpFile.getAbsolutePath();
+        String base = path.endsWith(".inp") ? path.substring(0, path.length() - 4) : path;
+        try {
+            check(swmm.swmm_open(path, base + ".rpt", ""));
+        } catch (IOException | RuntimeException e) {
+            OPEN.set(false);
+            throw e;
+        }
+    }
+
+    /**
+     * Interval at which recorded series are sampled, default 5 minutes as the OUT file report step.
+     * A sample holds the value at the first routing step at or after the sample time.
+     */
+    public SwmmEngine setSampleMinutes(double sampleMinutes) {
+        this.sampleMinutes = sampleMinutes;
+        return this;
+    }
+
+    /**
+     * Record a series while the engine runs, must be called before start
+     *
+     * @param id       node or link ID
+     * @param variable Depth, Head, Volume, LateralInflow, TotalInflow, Flooding (nodes)
+     *                 or Flow, Depth, Velocity, Setting (links)
+     * @param capacity number of samples kept, older ones are dropped
+     * @return buffer filled with the samples
+     */
+    public DoubleRingBuffer record(String id, String variable, int capacity) throws IOException {
+        if (started) {
+            throw new IllegalStateException("Series must be recorded before start");
+        }
+        int[] probe = probe(id, variable);
+        DoubleRingBuffer buffer = new DoubleRingBuffer(capacity);
+        probes.add(probe);
+        buffers.add(buffer);
+        series.put(id + "/" + variable, buffer);
+        return buffer;
+    }
+
+    public DoubleRingBuffer getSeries(String id, String variable) {
+        return series.get(id + "/" + variable);
+    }
+
+    /**
+     * @param saveResults whether results are also saved to a (temporary) binary file
+     */
+    public void start(boolean saveResults) throws IOException {
+        check(swmm.swmm_start(saveResults ? 1 : 0));
+        started = true;
+        // Like the OUT file, the first sample is taken one sample interval after the start
+        nextSample = sampleMinutes;
+        elapsedMinutes = 0;
+        totalMinutes = (swmm.swmm_getValue(SwmmLibrary.ENDDATE, 0) - swmm.swmm_getValue(SwmmLibrary.STARTDATE, 0)) * 1440;
+    }
+
+    /**
+     * Advance one routing step. The step that reaches the end of the simulation still takes its
+     * samples, up to and including the end, so the series are as long as those of the OUT file.
+     *
+     * @return false when this step reached the end of the simulation
+     */
+    public boolean step() throws IOException {
+        check(swmm.swmm_step(elapsed));
+        double minutes = elapsed.getValue() * 1440;
+        if (minutes <= 0) {
+            // SWMM returns 0 on the step that reaches the end of the run
+            elapsedMinutes = totalMinutes;
+            while (nextSample <= totalMinutes + 1e-6) {
+                sample();
+            }
+            return false;
+        }
+        elapsedMinutes = minutes;
+        while (minutes >= nextSample) {
+            sample();
+        }
+        return true;
+    }
+
+    /**
+     * Run to the end of the simulation, the listener is also called after the final step
+     */
+    public void run(StepListener listener) throws IOException {
+        if (!started) {
+            start(false);
+        }
+        boolean running;
+        do {
+            running = step();
+            if (listener != null) {
+                listener.afterStep(this, getElapsedMinutes());
+            }
+        } while (running);
+    }
+
+    /**
+     * Simulated minutes after the last step, the total duration once the end has been reached
+     */
+    public double getElapsedMinutes() {
+        return elapsedMinutes;
+    }
+
+    /**
+     * Current value of a node or link variable, see record for the variable names
+     */
+    public double getValue(String id, String variable) throws IOException {
+        int[] probe = probe(id, variable);
+        return swmm.swmm_getValue(probe[0], probe[1]);
+    }
+
+    /**
+     * Change the setting of an orifice, weir or pump (fraction open / pump speed setting)
+     */
+    public void setLinkSetting(String id, double setting) throws IOException {
+        swmm.swmm_setValue(SwmmLibrary.LINK_SETTING, index(SwmmLibrary.LINK, id), setting);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (started) {
+                check(swmm.swmm_end());
+            }
+            swmm.swmm_close();
+        } finally {
+            OPEN.set(false);
+        }
+    }
+
+    private void sample() {
+        for (int k = 0; k < probes.size(); k++) {
+            int[] probe = probes.get(k);
+            buffers.get(k).add(swmm.swmm_getValue(probe[0], probe[1]));
+        }
+        nextSample += sampleMinutes;
+    }
+
+    private int[] probe(String id, String variable) throws IOException {
+        switch (variable.toLowerCase(Locale.ROOT)) {
+            case "head":
+                return new int[]{SwmmLibrary.NODE_HEAD, index(SwmmLibrary.NODE, id)};
+            case "volume":
+                return new int[]{SwmmLibrary.NODE_VOLUME, index(SwmmLibrary.NODE, id)};
+            case "lateralinflow":
+                return new int[]{SwmmLibrary.NODE_LATFLOW, index(SwmmLibrary.NODE, id)};
+            case "totalinflow":
+                return new int[]{SwmmLibrary.NODE_INFLOW, index(SwmmLibrary.NODE, id)};
+            case "flooding":
+                return new int[]{SwmmLibrary.NODE_OVERFLOW, index(SwmmLibrary.NODE, id)};
+            case "flow":
+                return new int[]{SwmmLibrary.LINK_FLOW, index(SwmmLibrary.LINK, id)};
+            case "velocity":
+                return new int[]{SwmmLibrary.LINK_VELOCITY, index(SwmmLibrary.LINK, id)};
+            case "setting":
+                return new int[]{SwmmLibrary.LINK_SETTING, index(SwmmLibrary.LINK, id)};
+            case "depth":
+                // Nodes first, as in the OUT file reader
+                int node = swmm.swmm_getIndex(SwmmLibrary.NODE, id);
+                return node >= 0
+                        ? new int[]{SwmmLibrary.NODE_DEPTH, node}
+                        : new int[]{SwmmLibrary.LINK_DEPTH, index(SwmmLibrary.LINK, id)};
+            default:
+                throw new IOException("Unknown SWMM variable " + variable);
+        }
+    }
+
+    private int index(int type, String id) throws IOException {
+        int index = swmm.swmm_getIndex(type, id);
+        if (index < 0) {
+            throw new IOException("No " + (type == SwmmLibrary.NODE ? "node " : "link ") + id + " in the model");
+        }
+        return index;
+    }
+
+    private void check(int errorCode) throws IOException {
+        if (errorCode != 0) {
+            byte[] message = new byte[1024];
+            swmm.swmm_getError(message, message.length);
+            int length = 0;
+            while (length < message.length && message[length] != 0) {
+                length++;
+            }
+            throw new IOException("SWMM error " + errorCode + ": " + new String(message, 0, length, StandardCharsets.UTF_8).trim());
+        }
+    }
+}
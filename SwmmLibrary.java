@@ -0,0 +1,61 @@
+package iwhr.swmm.element;
+
+import com.sun.jna.ptr.DoubleByReference;
+import com.sun.jna.win32.StdCallLibrary;
+
+/**
+ * @author fww
+ * JNA mapping of the SWMM5 engine API (swmm5.h). Object counts, names and the
+ * getValue/setValue properties need the SWMM 5.2 engine library.
+ */
+public interface SwmmLibrary extends StdCallLibrary {
+
+    // EPA builds of swmm5.dll export __stdcall functions, other platforms ignore the convention
+    SwmmLibrary INSTANCE = SwmmNative.load();
+
+    // swmm_Object
+    int GAGE = 0;
+    int SUBCATCH = 1;
+    int NODE = 2;
+    int LINK = 3;
+
+    // swmm_SystemProperty, dates as decimal days
+    int STARTDATE = 0;
+    int ENDDATE = 9;
+
+    // swmm_NodeProperty
+    int NODE_DEPTH = 303;
+    int NODE_HEAD = 304;
+    int NODE_VOLUME = 305;
+    int NODE_LATFLOW = 306;
+    int NODE_INFLOW = 307;
+    int NODE_OVERFLOW = 308;
+
+    // swmm_LinkProperty
+    int LINK_SETTING = 407;
+    int LINK_FLOW = 410;
+    int LINK_DEPTH = 411;
+    int LINK_VELOCITY = 412;
+
+    int swmm_open(String inpFile, String rptFile, String outFile);
+
+    int swmm_start(int saveFlag);
+
+    int swmm_step(DoubleByReference elapsedTime);
+
+    int swmm_end();
+
+    int swmm_report();
+
+    int swmm_close();
+
+    int swmm_getError(byte[] errMsg, int msgLen);
+
+    int swmm_getCount(int objType);
+
+    int swmm_getIndex(int objType, String name);
+
+    double swmm_getValue(int property, int index);
+
+    void swmm_setValue(int property, int index, double value);
+}
@@ -0,0 +1,49 @@
+package iwhr.swmm.element;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLibrary;
+import com.sun.jna.Platform;
+
+import java.io.File;
+
+/**
+ * @author fww
+ * Locate and load the SWMM5 engine library for the running platform: swmm5.dll on Windows
+ * (32- or 64-bit, matching the JVM), libswmm5.so on Linux and libswmm5.dylib on macOS.
+ */
+public class SwmmNative {
+
+    /**
+     * System property with an explicit library name or path, e.g. /opt/swmm/lib/libswmm5.so
+     */
+    public static final String LIBRARY_PROPERTY = "swmm.library";
+
+    private static final String LIBRARY_NAME = "swmm5";
+
+    public static SwmmLibrary load() {
+        String library = System.getProperty(LIBRARY_PROPERTY, LIBRARY_NAME);
+        // Project-local copies in lib/<platform>, e.g. lib/linux-x86-64 or lib/win32-x86;
+        // JNA also looks in the same folder on the classpath and in jna.library.path
+        File local = new File("lib", Platform.RESOURCE_PREFIX);
+        if (local.isDirectory()) {
+            NativeLibrary.addSearchPath(library, local.getAbsolutePath());
+        }
+        try {
+            return Native.load(library, SwmmLibrary.class);
+        } catch (UnsatisfiedLinkError e) {
+            UnsatisfiedLinkError error = new UnsatisfiedLinkError("Cannot load SWMM engine '" + library + "' for "
+                    + describe() + ". Provide a " + (Platform.is64Bit() ? "64" : "32") + "-bit "
+                    + System.mapLibraryName(LIBRARY_NAME) + " in lib/" + Platform.RESOURCE_PREFIX
+                    + ", on jna.library.path, or set -D" + LIBRARY_PROPERTY + "=<path>");
+            error.initCause(e);
+            throw error;
+        }
+    }
+
+    /**
+     * Running platform as JNA sees it, e.g. "linux-x86-64 (64-bit JVM)"
+     */
+    public static String describe() {
+        return Platform.RESOURCE_PREFIX + " (" + (Platform.is64Bit() ? "64" : "32") + "-bit JVM)";
+    }
+}
@@ -0,0 +1,75 @@
+package iwhr.swmm.element;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author fww
+ * SWMM worker process started by SwmmWorkerPool. It owns one native engine instance and a
+ * scratch directory, connects back to the pool over a loopback socket and runs jobs one by one.
+ * Usage: SwmmWorker port workerIndex scratchDirectory
+ */
+public class SwmmWorker {
+
+    // Protocol: pool -> worker RUN job | SHUTDOWN; worker -> pool OK series | ERROR message
+    static final int RUN = 1;
+    static final int SHUTDOWN = 0;
+    static final int OK = 0;
+    static final int ERROR = 1;
+
+    public static void main(String[] args) throws IOException {
+        int port = Integer.parseInt(args[0]);
+        int index = Integer.parseInt(args[1]);
+        File scratch = new File(args[2]);
+        File swmmFile = new File(scratch, "swmm.inp");
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(index);
+            out.flush();
+
+            while (true) {
+                int command;
+                try {
+                    command = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (command == SHUTDOWN) {
+                    return;
+                }
+                SimulationJob job = SimulationJob.read(in);
+                try {
+                    try (OutputStream inp = new FileOutputStream(swmmFile)) {
+                        inp.write(job.getInpText().getBytes(StandardCharsets.UTF_8));
+                    }
+                    double[][] series = Simulation.run(swmmFile, job.getIds(), job.getVariables(), job.getMinutes());
+                    out.writeInt(OK);
+                    out.writeInt(series.length);
+                    for (double[] values : series) {
+                        out.writeInt(values.length);
+                        for (double value : values) {
+                            out.writeDouble(value);
+                        }
+                    }
+                } catch (Exception | LinkageError e) {
+                    out.writeInt(ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        }
+    }
+}
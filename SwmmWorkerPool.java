@@ -0,0 +1,277 @@
+package iwhr.swmm.element;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author fww
+ * Pool of SWMM worker processes. The native engine keeps global state, so concurrent runs
+ * need separate processes; each worker has its own scratch directory and engine instance
+ * and returns the extracted series over a loopback socket.
+ */
+public class SwmmWorkerPool implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MS = 60000;
+    // Attempts to replace a failed worker before its slot is given up
+    private static final int RESTART_ATTEMPTS = 3;
+
+    private final File workingDirectory;
+    private final File scratchRoot;
+    private final ServerSocket server;
+    private final Worker[] workers;
+    private final BlockingQueue<Worker> idle;
+    private final ExecutorService dispatcher;
+    // Workers that are running or idle, i.e. not given up after failed restarts
+    private final AtomicInteger alive;
+
+    private static final class Worker {
+        final int index;
+        Process process;
+        Socket socket;
+        DataInputStream in;
+        DataOutputStream out;
+
+        Worker(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * @param size             number of worker processes
+     * @param workingDirectory model directory, relative file names in jobs are resolved against it
+     * @param scratchRoot      parent of the per-worker scratch directories
+     */
+    public SwmmWorkerPool(int size, File workingDirectory, File scratchRoot) throws IOException {
+        this.workingDirectory = workingDirectory;
+        this.scratchRoot = scratchRoot;
+        this.server = new ServerSocket(0, size, InetAddress.getLoopbackAddress());
+        this.server.setSoTimeout(CONNECT_TIMEOUT_MS);
+        this.workers = new Worker[size];
+        this.idle = new ArrayBlockingQueue<>(size);
+        this.alive = new AtomicInteger(size);
+        this.dispatcher = Executors.newFixedThreadPool(size, r -> {
+            Thread thread = new Thread(r, "swmm-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            for (int k = 0; k < size; k++) {
+                workers[k] = new Worker(k);
+                launch(workers[k]);
+            }
+            for (int k = 0; k < size; k++) {
+                connect();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        for (Worker worker : workers) {
+            idle.add(worker);
+        }
+    }
+
+    public int size() {
+        return workers.length;
+    }
+
+    /**
+     * Workers still in service, fewer than size() after a worker could not be restarted
+     */
+    public int alive() {
+        return alive.get();
+    }
+
+    /**
+     * Run a job on the next idle worker
+     *
+     * @return extracted series in job order
+     */
+    public Future<double[][]> submit(SimulationJob job) {
+        return dispatcher.submit(() -> {
+            Worker worker = take();
+            boolean healthy = true;
+            try {
+                return execute(worker, job);
+            } catch (IOException e) {
+                // The process died or the stream is out of sync: replace it and fail this job only
+                healthy = restart(worker, e);
+                throw e;
+            } finally {
+                if (healthy) {
+                    idle.add(worker);
+                }
+            }
+        });
+    }
+
+    /**
+     * Run several jobs concurrently and wait for all of them
+     */
+    public List<double[][]> runAll(List<SimulationJob> jobs) throws Exception {
+        List<Future<double[][]>> futures = new ArrayList<>(jobs.size());
+        for (SimulationJob job : jobs) {
+            futures.add(submit(job));
+        }
+        List<double[][]> results = new ArrayList<>(jobs.size());
+        for (Future<double[][]> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        dispatcher.shutdownNow();
+        for (Worker worker : workers) {
+            if (worker != null) {
+                stop(worker);
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    private double[][] execute(Worker worker, SimulationJob job) throws IOException {
+        worker.out.writeInt(SwmmWorker.RUN);
+        job.write(worker.out);
+        worker.out.flush();
+        if (worker.in.readInt() != SwmmWorker.OK) {
+            throw new IllegalStateException("SWMM worker " + worker.index + ": " + worker.in.readUTF());
+        }
+        double[][] series = new double[worker.in.readInt()][];
+        for (int k = 0; k < series.length; k++) {
+            series[k] = new double[worker.in.readInt()];
+            for (int t = 0; t < series[k].length; t++) {
+                series[k][t] = worker.in.readDouble();
+            }
+        }
+        return series;
+    }
+
+    private void launch(Worker worker) throws IOException {
+        File scratch = new File(scratchRoot, "worker_" + worker.index);
+        if (!scratch.isDirectory() && !scratch.mkdirs()) {
+            throw new IOException("Cannot create scratch directory " + scratch);
+        }
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        // Engine selection and native library location carry over to the workers
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("mpc.") || name.startsWith("swmm.") || name.startsWith("jna.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add(SwmmWorker.class.getName());
+        command.add(String.valueOf(server.getLocalPort()));
+        command.add(String.valueOf(worker.index));
+        command.add(scratch.getAbsolutePath());
+        worker.process = new ProcessBuilder(command)
+                .directory(workingDirectory)
+                .redirectErrorStream(true)
+                .redirectOutput(new File(scratch, "worker.log"))
+                .start();
+    }
+
+    /**
+     * Accept one worker connection and attach it to the worker that announced its index
+     */
+    private void connect() throws IOException {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        Worker worker = workers[in.readInt()];
+        worker.socket = socket;
+        worker.in = in;
+        worker.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    /**
+     * Next idle worker; fails rather than waiting forever once every worker has been given up
+     */
+    private Worker take() throws IOException, InterruptedException {
+        while (true) {
+            Worker worker = idle.poll(1, TimeUnit.SECONDS);
+            if (worker != null) {
+                return worker;
+            }
+            if (alive.get() == 0) {
+                throw new IOException("No SWMM worker left, all of them failed to restart");
+            }
+        }
+    }
+
+    /**
+     * Replace a failed worker process. The failures of the attempts are added to cause; when all
+     * attempts fail the slot is given up and the pool runs on with the remaining workers.
+     *
+     * @return whether the worker is back in service
+     */
+    private synchronized boolean restart(Worker worker, IOException cause) {
+        for (int attempt = 0; attempt < RESTART_ATTEMPTS; attempt++) {
+            stop(worker);
+            try {
+                launch(worker);
+                connect();
+                if (worker.out != null) {
+                    return true;
+                }
+                cause.addSuppressed(new IOException("SWMM worker " + worker.index + " did not reconnect"));
+            } catch (IOException e) {
+                cause.addSuppressed(e);
+            }
+        }
+        stop(worker);
+        alive.decrementAndGet();
+        return false;
+    }
+
+    private void stop(Worker worker) {
+        try {
+            if (worker.out != null) {
+                worker.out.writeInt(SwmmWorker.SHUTDOWN);
+                worker.out.flush();
+            }
+            if (worker.socket != null) {
+                worker.socket.close();
+            }
+        } catch (IOException ignored) {
+            // The worker is gone already
+        }
+        if (worker.process != null) {
+            try {
+                if (!worker.process.waitFor(5, TimeUnit.SECONDS)) {
+                    worker.process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                worker.process.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+        worker.socket = null;
+        worker.in = null;
+        worker.out = null;
+    }
+}
@@ -0,0 +1,14 @@
+package iwhr.swmm.optModel;
+
+/**
+ * @author fww
+ * Why an optimizer run stopped
+ */
+public enum Termination {
+    // The convergence limit (hypervolume or steady fitness) ended the run
+    CONVERGED,
+    // The wall-clock budget ran out, the result is the best found so far
+    DEADLINE,
+    // The generation limit ended the run before it converged
+    GENERATION_LIMIT
+}
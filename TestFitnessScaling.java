@@ -0,0 +1,77 @@
+package test;
+
+import iwhr.swmm.mpcModel.MpcController;
+import iwhr.swmm.optModel.jdhSimModel;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.swmmtools.SeriesKey;
+import iwhr.swmm.util.CurveData;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * @author fww
+ * Scaling report of concurrent jdhFitness evaluation for 1, 4, 16 and 32 threads
+ */
+public class TestFitnessScaling {
+
+    public static void main(String[] args) throws Exception {
+
+        // Prediction results of the current swmm.inp are used as the optimizer input
+        File swmmFile = new File(framework_directory+"/swmm.inp");
+        double[][] series = BatchReadResult.readOutFile(swmmFile,
+                SeriesKey.elements(MpcController.RESULT_KEYS), SeriesKey.variables(MpcController.RESULT_KEYS));
+        ArrayList<double[]> dataList = new ArrayList<>(Arrays.asList(series));
+        CurveData curveData = new CurveData();
+        int[] parameters = new int[]{120, 10, 10, 5};
+
+        // One population worth of candidates
+        int variables = parameters[3] * parameters[0] / parameters[1];
+        Random random = new Random(42);
+        double[][] candidates = new double[1000][variables];
+        for (double[] candidate : candidates) {
+            for (int j = 0; j < variables; j++) {
+                candidate[j] = random.nextDouble() * 4.5;
+            }
+        }
+
+        double[][] reference = evaluate(1, candidates, curveData, parameters, dataList);
+        long serialTime = 0;
+        System.out.println("threads\ttime(ms)\tevals/s\tspeedup\tidentical");
+        for (int threads : new int[]{1, 4, 16, 32}) {
+            evaluate(threads, candidates, curveData, parameters, dataList); // warm-up
+            long t0 = System.nanoTime();
+            double[][] result = evaluate(threads, candidates, curveData, parameters, dataList);
+            long time = System.nanoTime() - t0;
+            if (threads == 1) {
+                serialTime = time;
+            }
+            // Any difference to the serial run means jdhFitness shares mutable state between calls
+            boolean identical = Arrays.deepEquals(reference, result);
+            System.out.printf("%d\t%.1f\t%.1f\t%.2f\t%s%n", threads, time / 1e6,
+                    candidates.length / (time / 1e9), (double) serialTime / time, identical);
+        }
+    }
+
+    private static double[][] evaluate(int threads, double[][] candidates, CurveData curveData,
+                                       int[] parameters, ArrayList<double[]> dataList) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> IntStream.range(0, candidates.length).parallel()
+                    .mapToObj(k -> {
+                        try {
+                            return jdhSimModel.jdhFitness(candidates[k], curveData, parameters, dataList);
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    })
+                    .toArray(double[][]::new)).get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package test;
+
+import iwhr.swmm.mpcModel.MpcController;
+import iwhr.swmm.optModel.Hypervolume;
+import iwhr.swmm.optModel.OptConfig;
+import iwhr.swmm.optModel.OptMethod;
+import iwhr.swmm.optModel.ParetoResult;
+import iwhr.swmm.optModel.RbfSurrogate;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.swmmtools.SeriesKey;
+import iwhr.swmm.util.CurveData;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * @author fww
+ * True jdhFitness evaluations and objective gap of a surrogate-assisted MOEA run against a full run
+ */
+public class TestSurrogate {
+
+    public static void main(String[] args) throws Exception {
+
+        // Prediction results of the current swmm.inp are used as the optimizer input
+        File swmmFile = new File(framework_directory+"/swmm.inp");
+        double[][] series = BatchReadResult.readOutFile(swmmFile,
+                SeriesKey.elements(MpcController.RESULT_KEYS), SeriesKey.variables(MpcController.RESULT_KEYS));
+        ArrayList<double[]> dataList = new ArrayList<>(Arrays.asList(series));
+        CurveData curveData = new CurveData();
+        int[] parameters = new int[]{120, 10, 10, 5};
+
+        long t0 = System.nanoTime();
+        ParetoResult full = OptMethod.MOEA(curveData, parameters, dataList, new OptConfig());
+        long fullTime = System.nanoTime() - t0;
+
+        t0 = System.nanoTime();
+        ParetoResult assisted = OptMethod.MOEA(curveData, parameters, dataList,
+                new OptConfig().setSurrogate(new RbfSurrogate(100, 2000, 4.5)));
+        long assistedTime = System.nanoTime() - t0;
+
+        // Both fronts are measured against the same reference point
+        double[] reference = reference(full.getObjectives(), assisted.getObjectives());
+        double fullVolume = Hypervolume.of(full.getObjectives(), reference);
+        double assistedVolume = Hypervolume.of(assisted.getObjectives(), reference);
+
+        System.out.println("run\tevaluations\tgenerations\ttime(s)\thypervolume\tbest objectives");
+        print("full", full, fullTime, fullVolume);
+        print("surrogate", assisted, assistedTime, assistedVolume);
+        System.out.printf("true evaluations saved: %.1f%%, hypervolume gap: %.2f%%%n",
+                100.0 * (full.getEvaluations() - assisted.getEvaluations()) / full.getEvaluations(),
+                100.0 * (fullVolume - assistedVolume) / fullVolume);
+    }
+
+    private static void print(String name, ParetoResult result, long time, double volume) {
+        System.out.printf("%s\t%d\t%d\t%.1f\t%.6g\t%s%n", name, result.getEvaluations(), result.getGenerations(),
+                time / 1e9, volume, Arrays.toString(best(result.getObjectives())));
+    }
+
+    /**
+     * Best value of each objective over the front
+     */
+    private static double[] best(double[][] objectives) {
+        double[] best = objectives[0].clone();
+        for (double[] point : objectives) {
+            for (int k = 0; k < best.length; k++) {
+                best[k] = Math.min(best[k], point[k]);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Worst value of each objective over both fronts, moved outwards by 10 %
+     */
+    private static double[] reference(double[][] a, double[][] b) {
+        double[] worst = a[0].clone();
+        for (double[][] front : new double[][][]{a, b}) {
+            for (double[] point : front) {
+                for (int k = 0; k < worst.length; k++) {
+                    worst[k] = Math.max(worst[k], point[k]);
+                }
+            }
+        }
+        for (int k = 0; k < worst.length; k++) {
+            worst[k] += Math.max(Math.abs(worst[k]) * 0.1, 1e-9);
+        }
+        return worst;
+    }
+}
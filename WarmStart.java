@@ -0,0 +1,75 @@
+package iwhr.swmm.optModel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @author fww
+ * Receding-horizon warm start: seed the next MPC step with the previous step's solutions
+ * shifted by one control interval. Decision vectors are ordered gate by gate,
+ * x[g * steps + k] is the opening of gate g at control step k.
+ */
+public class WarmStart {
+
+    private final int maxSeeds;
+    private double[][] solutions = new double[0][];
+    private long generations = -1;
+
+    /**
+     * @param maxSeeds upper bound of seeded individuals, the rest of the population stays random
+     */
+    public WarmStart(int maxSeeds) {
+        this.maxSeeds = maxSeeds;
+    }
+
+    /**
+     * Remember the solutions of the step that just finished
+     */
+    public synchronized void update(List<double[]> solutions, long generations) {
+        this.solutions = solutions.toArray(new double[0][]);
+        this.generations = generations;
+    }
+
+    /**
+     * Generations the previous step needed, -1 before the first step
+     */
+    public synchronized long getGenerations() {
+        return generations;
+    }
+
+    public synchronized void clear() {
+        solutions = new double[0][];
+        generations = -1;
+    }
+
+    /**
+     * Previous solutions shifted forward, each gate's tail padded with its last opening
+     *
+     * @param gates      number of controlled gates, parameters[3]
+     * @param shiftSteps control steps between two MPC steps
+     * @param min        lower bound of the decision variables
+     * @param max        upper bound of the decision variables
+     */
+    public synchronized List<double[]> seeds(int gates, int shiftSteps, double min, double max) {
+        List<double[]> seeds = new ArrayList<>();
+        for (double[] solution : solutions) {
+            if (seeds.size() == maxSeeds) {
+                break;
+            }
+            int steps = solution.length / gates;
+            double[] seed = new double[solution.length];
+            for (int g = 0; g < gates; g++) {
+                int offset = g * steps;
+                int kept = Math.max(steps - shiftSteps, 0);
+                System.arraycopy(solution, offset + steps - kept, seed, offset, kept);
+                Arrays.fill(seed, offset + kept, offset + steps, solution[offset + steps - 1]);
+            }
+            for (int j = 0; j < seed.length; j++) {
+                seed[j] = Math.min(Math.max(seed[j], min), max);
+            }
+            seeds.add(seed);
+        }
+        return seeds;
+    }
+}
@@ -0,0 +1,36 @@
+package iwhr.swmm.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * @author fww
+ * Runs the benchmarks with the usual JMH command line and writes the results as JSON, by default
+ * to target/jmh-result.json, so that two runs can be compared for regressions. Run from the
+ * benchmarks directory: java -jar target/benchmarks.jar [JMH options] [benchmark regex]
+ */
+public class BenchmarkRunner {
+
+    private static final String DEFAULT_RESULT = "target/jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(commandLine);
+        if (!commandLine.getResultFormat().hasValue()) {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+        if (!commandLine.getResult().hasValue()) {
+            File result = new File(DEFAULT_RESULT);
+            result.getParentFile().mkdirs();
+            options.result(result.getPath());
+        }
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.util.EntropyWeight;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author fww
+ * UFHWS indicator weights of large sample matrices, in memory and streamed from a data.txt-like
+ * text file. The matrices are generated with a fixed seed instead of being checked in; values are
+ * log-normal and a few are zero, like rainfall and flood peak indicators.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EntropyWeightBenchmark {
+
+    @Param({"10000", "200000"})
+    public int samples;
+
+    @Param({"30"})
+    public int indicators;
+
+    private double[][] data;
+    private File file;
+
+    @Setup
+    public void setup() throws IOException {
+        Random random = new Random(42);
+        data = new double[samples][indicators];
+        for (int i = 0; i < samples; i++) {
+            for (int j = 0; j < indicators; j++) {
+                data[i][j] = random.nextDouble() < 0.05 ? 0 : Math.exp(random.nextGaussian() + j * 0.05);
+            }
+        }
+        file = File.createTempFile("data", ".txt");
+        try (Writer writer = new BufferedWriter(new FileWriter(file))) {
+            for (double[] row : data) {
+                for (int j = 0; j < indicators; j++) {
+                    writer.write(String.format(Locale.ROOT, j == 0 ? "%.6f" : " %.6f", row[j]));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public double[] entropyWeight() {
+        return EntropyWeight.entropyWeight(data);
+    }
+
+    @Benchmark
+    public double[] entropyWeightFile() throws IOException {
+        return EntropyWeight.entropyWeight(file);
+    }
+}
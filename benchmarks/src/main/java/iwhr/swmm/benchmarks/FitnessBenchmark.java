@@ -0,0 +1,57 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.optModel.jdhSimModel;
+import iwhr.swmm.util.CurveData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author fww
+ * One jdhFitness evaluation, the unit of work of both optimizers. Candidates are drawn from a
+ * fixed set of random schedules so the JIT cannot specialize on a single input.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FitnessBenchmark {
+
+    private static final int CANDIDATES = 64;
+
+    private CurveData curveData;
+    private ArrayList<double[]> dataList;
+    private double[][] candidates;
+    private int next;
+
+    @Setup
+    public void setup() throws Exception {
+        curveData = new CurveData();
+        dataList = Fixtures.dataList();
+        Random random = new Random(42);
+        candidates = new double[CANDIDATES][];
+        for (int i = 0; i < CANDIDATES; i++) {
+            candidates[i] = Fixtures.schedule(random, 0.1, 4.5);
+        }
+    }
+
+    @Benchmark
+    public double[] jdhFitness() throws Exception {
+        double[] x = candidates[next];
+        next = (next + 1) % CANDIDATES;
+        return jdhSimModel.jdhFitness(x, curveData, Fixtures.PARAMETERS, dataList);
+    }
+}
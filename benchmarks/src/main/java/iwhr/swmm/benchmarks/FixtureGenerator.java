@@ -0,0 +1,308 @@
+package iwhr.swmm.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * @author fww
+ * Writes the checked-in benchmark fixtures: a synthetic SWMM model of the size of the
+ * Jingdian-Qinting Lake network and a matching binary OUT file of a 2 h prediction run at 5 min
+ * report steps. The elements read by JdhMpc carry flood-like hydrographs, all other values are
+ * seeded noise, so the fixtures are reproducible. Only rerun when the fixture layout changes:
+ * java -cp target/benchmarks.jar iwhr.swmm.benchmarks.FixtureGenerator fixtures
+ */
+public class FixtureGenerator {
+
+    private static final int MAGIC_NUMBER = 516114522;
+    private static final int VERSION = 51000;
+    private static final int FLOW_UNITS_CMS = 3;
+
+    private static final int SUBCATCHMENTS = 200;
+    private static final int NODES = 600;
+    private static final int LINKS = 700;
+    private static final int SUBCATCH_VARS = 8;
+    private static final int NODE_VARS = 6;
+    private static final int LINK_VARS = 5;
+    private static final int SYSTEM_VARS = 15;
+    private static final int REPORT_STEP = 300;
+    private static final int PERIODS = 24;
+
+    // Elements read by JdhMpc come first in the OUT file; the INP file only shares the names, it is never simulated
+    private static final String[] NAMED_NODES = {"JDH", "JFX_1480", "YTX_x3", "YTX_x2", "Lake_QTH", "t", "JFX_1870"};
+    // Base head (m), head rise at the peak (m), base and peak total inflow (m3/s)
+    private static final double[][] NODE_HYDROGRAPHS = {
+            {11.2, 1.4, 8, 40}, {11.8, 1.1, 12, 55}, {12.1, 0.9, 6, 30}, {11.9, 1.0, 5, 28},
+            {4.6, 0.8, 20, 96}, {4.4, 0.6, 15, 70}, {12.4, 0.7, 10, 45}};
+    private static final String[] CONTROL_IDS = Fixtures.CONTROL_IDS;
+
+    public static void main(String[] args) throws IOException {
+        File directory = new File(args.length > 0 ? args[0] : "fixtures");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        writeInp(new File(directory, "swmm.inp"));
+        writeOut(new File(directory, "swmm.out"));
+        System.out.println("Fixtures written to " + directory.getAbsolutePath());
+    }
+
+    private static String[] subcatchments() {
+        String[] names = new String[SUBCATCHMENTS];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "S" + (i + 1);
+        }
+        return names;
+    }
+
+    private static String[] nodes() {
+        String[] names = new String[NODES];
+        System.arraycopy(NAMED_NODES, 0, names, 0, NAMED_NODES.length);
+        for (int i = NAMED_NODES.length; i < names.length; i++) {
+            names[i] = "J" + (i + 1);
+        }
+        return names;
+    }
+
+    private static String[] links() {
+        String[] names = new String[LINKS];
+        System.arraycopy(CONTROL_IDS, 0, names, 0, CONTROL_IDS.length);
+        for (int i = CONTROL_IDS.length; i < names.length; i++) {
+            names[i] = "C" + (i + 1);
+        }
+        return names;
+    }
+
+    private static void writeInp(File file) throws IOException {
+        Random random = new Random(42);
+        String[] subcatchments = subcatchments();
+        String[] nodes = nodes();
+        String[] links = links();
+        List<String> lines = new ArrayList<>();
+        lines.add("[TITLE]");
+        lines.add(";;Synthetic benchmark model, generated by FixtureGenerator");
+        lines.add("");
+        lines.add("[OPTIONS]");
+        lines.add("FLOW_UNITS           CMS");
+        lines.add("INFILTRATION         HORTON");
+        lines.add("FLOW_ROUTING         DYNWAVE");
+        lines.add("START_DATE           07/20/2021");
+        lines.add("START_TIME           00:00:00");
+        lines.add("REPORT_START_DATE    07/20/2021");
+        lines.add("REPORT_START_TIME    00:00:00");
+        lines.add("END_DATE             07/20/2021");
+        lines.add("END_TIME             02:00:00");
+        lines.add("REPORT_STEP          00:05:00");
+        lines.add("WET_STEP             00:01:00");
+        lines.add("DRY_STEP             00:05:00");
+        lines.add("ROUTING_STEP         5");
+        lines.add("");
+        lines.add("[RAINGAGES]");
+        lines.add("RG1              INTENSITY 0:05     1.0      TIMESERIES RAIN");
+        lines.add("");
+        lines.add("[SUBCATCHMENTS]");
+        for (int i = 0; i < subcatchments.length; i++) {
+            lines.add(String.format(Locale.ROOT, "%-16s RG1              %-16s %-8.2f %-8.1f %-8.1f %-8.2f 0",
+                    subcatchments[i], nodes[NAMED_NODES.length + i], 5 + 40 * random.nextDouble(),
+                    20 + 70 * random.nextDouble(), 100 + 400 * random.nextDouble(), 0.1 + 2 * random.nextDouble()));
+        }
+        lines.add("");
+        lines.add("[JUNCTIONS]");
+        for (int i = 0; i < nodes.length; i++) {
+            if (i != 4) {
+                lines.add(String.format(Locale.ROOT, "%-16s %-10.3f %-10.2f 0          0          0",
+                        nodes[i], 2 + 10 * random.nextDouble(), 2 + 4 * random.nextDouble()));
+            }
+        }
+        lines.add("");
+        lines.add("[STORAGE]");
+        lines.add(String.format(Locale.ROOT, "%-16s %-10.3f %-10.2f 1.0        FUNCTIONAL 96852      0          0", nodes[4], 1.2, 6.5));
+        lines.add("");
+        lines.add("[CONDUITS]");
+        for (int i = CONTROL_IDS.length; i < links.length; i++) {
+            int from = 1 + random.nextInt(nodes.length - 1);
+            int to = random.nextInt(from);
+            lines.add(String.format(Locale.ROOT, "%-16s %-16s %-16s %-10.1f 0.013      0          0          0          0",
+                    links[i], nodes[from], nodes[to], 50 + 450 * random.nextDouble()));
+        }
+        lines.add("");
+        lines.add("[PUMPS]");
+        lines.add(String.format("%-16s %-16s %-16s PUMP_CURVE       OFF      0          0", "P1", "t", "J8"));
+        lines.add("");
+        lines.add("[ORIFICES]");
+        for (int g = 0; g < 3; g++) {
+            lines.add(String.format("%-16s %-16s %-16s SIDE       0          0.65       NO         0",
+                    CONTROL_IDS[g], "Lake_QTH", NAMED_NODES[g]));
+        }
+        lines.add("");
+        lines.add("[WEIRS]");
+        lines.add(String.format("%-16s %-16s %-16s TRANSVERSE 0          3.33       NO         0          0          YES", "W4", "Lake_QTH", "JFX_1870"));
+        lines.add("");
+        lines.add("[XSECTIONS]");
+        for (int i = 0; i < links.length; i++) {
+            if (i < 3) {
+                lines.add(String.format("%-16s RECT_CLOSED  4.5              6          0          0", links[i]));
+            } else if (i == 3) {
+                lines.add(String.format("%-16s RECT_OPEN    4.5              12         0          0", links[i]));
+            } else if (i > 4) {
+                lines.add(String.format(Locale.ROOT, "%-16s CIRCULAR     %-16.2f 0          0          0          1",
+                        links[i], 0.6 + 2.4 * random.nextDouble()));
+            }
+        }
+        lines.add("");
+        lines.add("[CURVES]");
+        lines.add("PUMP_CURVE       Pump4      0          0");
+        lines.add("PUMP_CURVE                  1          8");
+        lines.add("PUMP_CURVE                  4.5        16");
+        lines.add("");
+        lines.add("[CONTROLS]");
+        lines.add("RULE R_PUMP_SAFETY");
+        lines.add("IF NODE t DEPTH < 0.3");
+        lines.add("THEN PUMP P1 STATUS = OFF");
+        lines.add("PRIORITY 5");
+        lines.add("");
+        lines.add("[TIMESERIES]");
+        // Single-peak rain hyetograph at the 5 min report steps
+        for (int k = 0; k <= 24; k++) {
+            double intensity = 120 * Math.exp(-Math.pow((k - 8) / 3.0, 2)) + 2;
+            lines.add(String.format(Locale.ROOT, "%-16s 07/20/2021 %02d:%02d      %.4f", "RAIN", k * 5 / 60, k * 5 % 60, intensity));
+        }
+        lines.add("");
+        lines.add("[REPORT]");
+        lines.add("SUBCATCHMENTS ALL");
+        lines.add("NODES ALL");
+        lines.add("LINKS ALL");
+        lines.add("");
+        lines.add("[COORDINATES]");
+        for (String node : nodes) {
+            lines.add(String.format(Locale.ROOT, "%-16s %-18.3f %-18.3f", node,
+                    502000 + 8000 * random.nextDouble(), 3381000 + 6000 * random.nextDouble()));
+        }
+        lines.add("");
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
+            for (String line : lines) {
+                writer.print(line);
+                writer.print("\r\n");
+            }
+        }
+    }
+
+    private static void writeOut(File file) throws IOException {
+        Random random = new Random(7);
+        String[] subcatchments = subcatchments();
+        String[] nodes = nodes();
+        String[] links = links();
+
+        ByteBuffer ids = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (String[] names : new String[][]{subcatchments, nodes, links}) {
+            for (String name : names) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                ids.putInt(bytes.length).put(bytes);
+            }
+        }
+
+        // Element properties: subcatchment area; node type, invert, max depth; link type, offsets, depth, length
+        ByteBuffer input = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        input.putInt(1).putInt(1);
+        for (int i = 0; i < SUBCATCHMENTS; i++) {
+            input.putFloat(5 + 40 * random.nextFloat());
+        }
+        input.putInt(3).putInt(0).putInt(2).putInt(3);
+        for (int i = 0; i < NODES; i++) {
+            input.putFloat(i == 4 ? 2 : 0).putFloat(2 + 10 * random.nextFloat()).putFloat(2 + 4 * random.nextFloat());
+        }
+        input.putInt(5).putInt(0).putInt(4).putInt(4).putInt(3).putInt(5);
+        for (int i = 0; i < LINKS; i++) {
+            input.putFloat(i < 4 ? 3 + (i == 3 ? 1 : 0) : i == 4 ? 1 : 0)
+                    .putFloat(0).putFloat(0).putFloat(0.6f + 2.4f * random.nextFloat()).putFloat(50 + 450 * random.nextFloat());
+        }
+        // Reporting variables, all of them in the standard order
+        input.putInt(SUBCATCH_VARS);
+        for (int v = 0; v < SUBCATCH_VARS; v++) {
+            input.putInt(v);
+        }
+        input.putInt(NODE_VARS);
+        for (int v = 0; v < NODE_VARS; v++) {
+            input.putInt(v);
+        }
+        input.putInt(LINK_VARS);
+        for (int v = 0; v < LINK_VARS; v++) {
+            input.putInt(v);
+        }
+        input.putInt(SYSTEM_VARS);
+        for (int v = 0; v < SYSTEM_VARS; v++) {
+            input.putInt(v);
+        }
+        double startDate = ChronoUnit.DAYS.between(LocalDate.of(1899, 12, 30), LocalDate.of(2021, 7, 20));
+        input.putDouble(startDate).putInt(REPORT_STEP);
+
+        int bytesPerPeriod = 8 + 4 * (SUBCATCHMENTS * SUBCATCH_VARS + NODES * NODE_VARS + LINKS * LINK_VARS + SYSTEM_VARS);
+        ByteBuffer output = ByteBuffer.allocate(PERIODS * bytesPerPeriod).order(ByteOrder.LITTLE_ENDIAN);
+        for (int t = 0; t < PERIODS; t++) {
+            // Flood wave peaking after 50 min
+            double wave = Math.exp(-Math.pow((t - 9) / 5.0, 2));
+            output.putDouble(startDate + (t + 1) * REPORT_STEP / 86400.0);
+            for (int i = 0; i < SUBCATCHMENTS; i++) {
+                double rain = 120 * Math.exp(-Math.pow((t - 7) / 3.0, 2)) + 2;
+                output.putFloat((float) rain).putFloat(0).putFloat(0).putFloat((float) (0.4 * rain))
+                        .putFloat((float) (wave * 3 * random.nextDouble())).putFloat(0).putFloat(0).putFloat(0);
+            }
+            double flooding = 0;
+            for (int i = 0; i < NODES; i++) {
+                double head;
+                double inflow;
+                if (i < NAMED_NODES.length) {
+                    double[] h = NODE_HYDROGRAPHS[i];
+                    head = h[0] + h[1] * wave;
+                    inflow = h[2] + (h[3] - h[2]) * wave;
+                } else {
+                    head = 2 + 10 * random.nextDouble() + wave;
+                    inflow = 5 * wave * random.nextDouble();
+                }
+                double depth = 0.5 + 2 * wave;
+                double flood = i >= NAMED_NODES.length && random.nextDouble() < 0.02 ? wave * random.nextDouble() : 0;
+                flooding += flood;
+                output.putFloat((float) depth).putFloat((float) head).putFloat((float) (depth * 12))
+                        .putFloat((float) (0.3 * inflow)).putFloat((float) inflow).putFloat((float) flood);
+            }
+            for (int i = 0; i < LINKS; i++) {
+                double flow = i < CONTROL_IDS.length ? 6 + 14 * wave : 3 * wave * random.nextDouble();
+                output.putFloat((float) flow).putFloat((float) (0.3 + wave)).putFloat((float) (0.2 + 1.5 * wave))
+                        .putFloat((float) (flow * 40)).putFloat((float) Math.min(1, 0.2 + wave));
+            }
+            // System variables, flooding and outflow at their standard positions
+            for (int v = 0; v < SYSTEM_VARS; v++) {
+                double value = v == 1 ? 120 * Math.exp(-Math.pow((t - 7) / 3.0, 2)) + 2
+                        : v == 10 ? flooding : v == 11 ? 30 + 60 * wave : 0;
+                output.putFloat((float) value);
+            }
+        }
+
+        int idStart = 7 * 4;
+        int inputStart = idStart + ids.position();
+        int outputStart = inputStart + input.position();
+        ByteBuffer header = ByteBuffer.allocate(7 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC_NUMBER).putInt(VERSION).putInt(FLOW_UNITS_CMS)
+                .putInt(SUBCATCHMENTS).putInt(NODES).putInt(LINKS).putInt(0);
+        ByteBuffer closing = ByteBuffer.allocate(6 * 4).order(ByteOrder.LITTLE_ENDIAN);
+        closing.putInt(idStart).putInt(inputStart).putInt(outputStart).putInt(PERIODS).putInt(0).putInt(MAGIC_NUMBER);
+
+        try (OutputStream stream = new FileOutputStream(file)) {
+            stream.write(header.array(), 0, header.position());
+            stream.write(ids.array(), 0, ids.position());
+            stream.write(input.array(), 0, input.position());
+            stream.write(output.array(), 0, output.position());
+            stream.write(closing.array(), 0, closing.position());
+        }
+    }
+}
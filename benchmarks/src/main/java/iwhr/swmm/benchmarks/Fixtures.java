@@ -0,0 +1,69 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.mpcModel.MpcController;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.swmmtools.SeriesKey;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * @author fww
+ * Checked-in inputs of the benchmarks, see FixtureGenerator. The fixture directory is
+ * benchmarks/fixtures relative to the working directory, or the fixtures system property.
+ */
+final class Fixtures {
+
+    // Same series as JdhMpc extracts from a prediction run
+    static final String[] RESULT_IDS = SeriesKey.elements(MpcController.RESULT_KEYS);
+    static final String[] RESULT_VARIABLES = SeriesKey.variables(MpcController.RESULT_KEYS);
+
+    static final String[] CONTROL_IDS = MpcController.CONTROL_IDS;
+
+    // Simulation start of the fixture model
+    static final String START = "07/20/2021 00:00:00";
+
+    // MPC parameters as in JdhMpc: 120 min horizon at 10 min control steps, 5 controlled elements
+    static final int[] PARAMETERS = {120, 10, 10, 5};
+
+    private Fixtures() {
+    }
+
+    static File directory() {
+        return new File(System.getProperty("fixtures", "fixtures"));
+    }
+
+    /**
+     * The fixture model; its OUT file lies beside it
+     */
+    static File swmmFile() {
+        File file = new File(directory(), "swmm.inp");
+        if (!file.isFile()) {
+            throw new IllegalStateException("Fixture " + file.getAbsolutePath()
+                    + " not found, run from the benchmarks directory or set -Dfixtures");
+        }
+        return file;
+    }
+
+    /**
+     * Optimizer input as JdhMpc builds it from a prediction run
+     */
+    static ArrayList<double[]> dataList() throws IOException {
+        return new ArrayList<>(Arrays.asList(BatchReadResult.readOutFile(swmmFile(), RESULT_IDS, RESULT_VARIABLES)));
+    }
+
+    /**
+     * Gate-major schedule of all controlled elements with settings in [min, max]
+     */
+    static double[] schedule(Random random, double min, double max) {
+        int steps = PARAMETERS[0] / PARAMETERS[1];
+        double[] settings = new double[PARAMETERS[3] * steps];
+        for (int j = 0; j < settings.length; j++) {
+            settings[j] = min + random.nextDouble() * (max - min);
+        }
+        return settings;
+    }
+}
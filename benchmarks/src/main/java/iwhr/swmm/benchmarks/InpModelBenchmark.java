@@ -0,0 +1,74 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.swmmtools.InpModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author fww
+ * Rewriting the MPC control rules of the fixture model, the per-step INP update of JdhMpc
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InpModelBenchmark {
+
+    private InpModel inp;
+    private double[] settings;
+    private File target;
+
+    @Setup
+    public void setup() throws IOException {
+        inp = InpModel.read(Fixtures.swmmFile());
+        settings = Fixtures.schedule(new Random(42), 0.1, 4.5);
+        target = File.createTempFile("mpc", ".inp");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (!target.delete()) {
+            target.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public InpModel read() throws IOException {
+        return InpModel.read(Fixtures.swmmFile());
+    }
+
+    /**
+     * Control rules replaced and the model written, as applyControls and the feedback run do
+     */
+    @Benchmark
+    public File rewriteControls() throws IOException {
+        inp.setControlRules(Fixtures.CONTROL_IDS, settings, Fixtures.START, Fixtures.PARAMETERS[1]);
+        inp.write(target);
+        return target;
+    }
+
+    /**
+     * Control rules replaced and the model serialized for a SwmmWorker
+     */
+    @Benchmark
+    public String rewriteAndSerialize() {
+        inp.setControlRules(Fixtures.CONTROL_IDS, settings, Fixtures.START, Fixtures.PARAMETERS[1]);
+        return inp.serialize();
+    }
+}
@@ -0,0 +1,64 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.optModel.GaResult;
+import iwhr.swmm.optModel.OptConfig;
+import iwhr.swmm.optModel.OptMethod;
+import iwhr.swmm.optModel.ParetoResult;
+import iwhr.swmm.util.CurveData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author fww
+ * One generation of the MOEA and jdhGA engines on the fixture prediction: evaluation of the
+ * initial population, selection, alteration and evaluation of the offspring. Without warm start,
+ * fitness cache or surrogate every call starts from a fresh random population.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OptimizerBenchmark {
+
+    // Fitness evaluation executor, see OptConfig.executor
+    @Param({"forkjoin", "serial"})
+    public String executor;
+
+    private CurveData curveData;
+    private ArrayList<double[]> dataList;
+    private OptConfig config;
+
+    @Setup
+    public void setup() throws IOException {
+        curveData = new CurveData();
+        dataList = Fixtures.dataList();
+        config = new OptConfig()
+                .setExecutor(OptConfig.executor(executor, Runtime.getRuntime().availableProcessors()))
+                .setMaxGenerations(1);
+    }
+
+    @Benchmark
+    public ParetoResult moeaGeneration() throws IOException {
+        return OptMethod.MOEA(curveData, Fixtures.PARAMETERS, dataList, config);
+    }
+
+    @Benchmark
+    public GaResult gaGeneration() throws IOException {
+        return OptMethod.jdhGA(curveData, Fixtures.PARAMETERS, dataList, 1, config);
+    }
+}
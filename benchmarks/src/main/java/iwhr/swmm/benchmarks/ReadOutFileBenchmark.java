@@ -0,0 +1,50 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.swmmtools.BatchReadResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author fww
+ * Reading the prediction results from the fixture OUT file, as JdhMpc does after every SWMM run
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadOutFileBenchmark {
+
+    private File swmmFile;
+
+    @Setup
+    public void setup() {
+        swmmFile = Fixtures.swmmFile();
+    }
+
+    /**
+     * All 15 series of the optimizer input in one pass
+     */
+    @Benchmark
+    public double[][] resultSeries() throws IOException {
+        return BatchReadResult.readOutFile(swmmFile, Fixtures.RESULT_IDS, Fixtures.RESULT_VARIABLES);
+    }
+
+    @Benchmark
+    public double[] singleSeries() throws IOException {
+        return BatchReadResult.readOutFile(swmmFile, "JDH", "Head");
+    }
+}
@@ -0,0 +1,206 @@
+package iwhr.swmm.benchmarks;
+
+import iwhr.swmm.element.Simulation;
+import iwhr.swmm.mpcModel.MpcController;
+import iwhr.swmm.mpcModel.MpcStepResult;
+import iwhr.swmm.mpcModel.PriorityConfig;
+import iwhr.swmm.optModel.OptConfig;
+import iwhr.swmm.swmmtools.BatchReadResult;
+import iwhr.swmm.swmmtools.SeriesKey;
+import iwhr.swmm.swmmtools.SeriesStore;
+import iwhr.swmm.util.DesignStorm;
+import iwhr.swmm.util.LatencyHistogram;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * @author fww
+ * Closed-loop replay of the full MPC loop (predict, optimize, apply, feedback) over synthetic
+ * Chicago design storms, once per optimizer configuration, to weigh control quality against
+ * compute cost. Needs the real model and the native SWMM engine, unlike the JMH benchmarks.
+ * Writes one CSV line per configuration and storm: flood volume and peak levels of the applied
+ * control, per-step latency and the CPU time of the whole replay.
+ * <pre>
+ * java -Dreplay.model=../swmm.inp -cp target/benchmarks.jar iwhr.swmm.benchmarks.ReplayBenchmark \
+ *     baseline small:population=500,tournament=30 ga:optimizer=ga,mutation=0.2
+ * </pre>
+ * A configuration is name:key=value,... with the keys optimizer, population, tournament, mutation,
+ * crossover, generations and budget (ms); the rest of the settings are the usual -Dopt and -Dmpc ones.
+ * Settings: replay.model = SWMM input file (required), replay.out = result file (default
+ * target/replay-result.csv), replay.returnPeriods = storms in years (default 1,5,20),
+ * replay.duration / replay.peak = storm duration in minutes and peak position (default 120, 0.4),
+ * replay.hours = simulated hours of each event including the drain-down (default 6),
+ * replay.start = event start (default 06/01/2020 00:00:00), the intensity formula see DesignStorm.
+ */
+public class ReplayBenchmark {
+
+    // Rain step of the design storms
+    private static final int RAIN_STEP_MINUTES = 5;
+
+    private static final SeriesKey FLOODING = SeriesKey.of(BatchReadResult.SYSTEM, "Flooding");
+    private static final SeriesKey JDH_LEVEL = SeriesKey.of("JDH", "Head");
+    private static final SeriesKey QTH_LEVEL = SeriesKey.of("Lake_QTH", "Head");
+
+    private static final String HEADER = "configuration,return_period,steps,flood_volume_m3,peak_jdh_m,peak_qth_m,"
+            + "step_mean_ms,step_p90_ms,step_max_ms,cpu_s,wall_s,evaluations,not_converged";
+
+    public static void main(String[] args) throws Exception {
+        String model = System.getProperty("replay.model");
+        if (model == null) {
+            throw new IllegalArgumentException("Set -Dreplay.model to the SWMM input file to replay");
+        }
+        if (!Boolean.parseBoolean(System.getProperty("mpc.hotStart", "true"))) {
+            throw new IllegalArgumentException("The replay measures the feedback runs, which need -Dmpc.hotStart=true");
+        }
+        if (Simulation.STEPWISE_ENGINE) {
+            throw new IllegalArgumentException("The replay reads the feedback runs' OUT files, which the stepwise engine does not write; unset -Dmpc.engine");
+        }
+        File swmmFile = new File(model);
+        // Every run changes the model file, each one starts from the original
+        byte[] original = Files.readAllBytes(swmmFile.toPath());
+
+        List<String> configurations = args.length > 0 ? Arrays.asList(args) : Arrays.asList("baseline");
+        double[] returnPeriods = Arrays.stream(System.getProperty("replay.returnPeriods", "1,5,20").split(","))
+                .mapToDouble(p -> Double.parseDouble(p.trim())).toArray();
+        int duration = Integer.getInteger("replay.duration", 120);
+        double peak = Double.parseDouble(System.getProperty("replay.peak", "0.4"));
+        int hours = Integer.getInteger("replay.hours", 6);
+        DateTimeFormatter format = DateTimeFormatter.ofPattern(System.getProperty("mpc.timeFormat", "MM/dd/yyyy HH:mm:ss"), Locale.ROOT);
+        LocalDateTime start = LocalDateTime.parse(System.getProperty("replay.start", "06/01/2020 00:00:00"), format);
+        DesignStorm storm = DesignStorm.fromSystemProperties();
+
+        File out = new File(System.getProperty("replay.out", "target/replay-result.csv"));
+        File parent = out.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8))) {
+            writer.println(HEADER);
+            for (String configuration : configurations) {
+                for (double returnPeriod : returnPeriods) {
+                    List<String> rain = DesignStorm.timeSeries(storm.hyetograph(returnPeriod, duration, peak, RAIN_STEP_MINUTES),
+                            start, RAIN_STEP_MINUTES, format);
+                    try {
+                        String line = replay(swmmFile, configuration, returnPeriod, rain, start, hours, format);
+                        writer.println(line);
+                        writer.flush();
+                        System.out.println(line);
+                    } finally {
+                        Files.write(swmmFile.toPath(), original);
+                    }
+                }
+            }
+        }
+        System.out.println("Replay results written to " + out.getAbsolutePath());
+    }
+
+    /**
+     * Run the MPC loop over one storm with one configuration
+     */
+    private static String replay(File swmmFile, String configuration, double returnPeriod, List<String> rain,
+                                 LocalDateTime start, int hours, DateTimeFormatter format) throws Exception {
+        String name = configuration;
+        String optimizer = System.getProperty("mpc.optimizer", "moea");
+        OptConfig config = OptConfig.fromSystemProperties();
+        int colon = configuration.indexOf(':');
+        if (colon >= 0) {
+            name = configuration.substring(0, colon);
+            for (String setting : configuration.substring(colon + 1).split(",")) {
+                if (setting.trim().isEmpty()) {
+                    continue;
+                }
+                String[] kv = setting.split("=", 2);
+                if (kv.length != 2) {
+                    throw new IllegalArgumentException("Expected key=value in " + configuration + ", got " + setting);
+                }
+                String value = kv[1].trim();
+                switch (kv[0].trim()) {
+                    case "optimizer":
+                        optimizer = value;
+                        break;
+                    case "population":
+                        config.setPopulationSize(Integer.parseInt(value));
+                        break;
+                    case "tournament":
+                        config.setTournamentSize(Integer.parseInt(value));
+                        break;
+                    case "mutation":
+                        config.setMutationRate(Double.parseDouble(value));
+                        break;
+                    case "crossover":
+                        config.setCrossoverRate(Double.parseDouble(value));
+                        break;
+                    case "generations":
+                        config.setMaxGenerations(Integer.parseInt(value));
+                        break;
+                    case "budget":
+                        config.setTimeBudgetMillis(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown setting " + kv[0] + " in " + configuration);
+                }
+            }
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        double flood = 0;
+        double peakJdh = Double.NEGATIVE_INFINITY;
+        double peakQth = Double.NEGATIVE_INFINITY;
+        long evaluations = 0;
+        int notConverged = 0;
+        int steps;
+        long cpuStart = processCpuNanos();
+        long wallStart = System.nanoTime();
+        try (MpcController controller = new MpcController(swmmFile, config, optimizer, PriorityConfig.fromSystemProperties())) {
+            controller.submit(inp -> inp.setTimeSeries(controller.getRainSeries(), rain));
+            int interval = controller.getIntervalMinutes();
+            steps = (hours * 60 - controller.getHorizonMinutes()) / interval;
+            for (int i = 0; i < steps; i++) {
+                LocalDateTime time = start.plusMinutes((long) i * interval);
+                MpcStepResult result = controller.step(i, format.format(time),
+                        format.format(time.plusMinutes(controller.getHorizonMinutes())),
+                        format.format(time.plusMinutes(interval)));
+                latency.recordNanos((long) (result.getTotalMillis() * 1e6));
+                evaluations += result.getControl().getEvaluations();
+                if (!result.getControl().isConverged()) {
+                    notConverged++;
+                }
+                // Quality of the applied control: the feedback run of this interval
+                SeriesStore feedback = controller.readFeedback(FLOODING, JDH_LEVEL, QTH_LEVEL);
+                flood += feedback.volume(FLOODING);
+                peakJdh = Math.max(peakJdh, feedback.max(JDH_LEVEL));
+                peakQth = Math.max(peakQth, feedback.max(QTH_LEVEL));
+            }
+        }
+        double cpuSeconds = (processCpuNanos() - cpuStart) / 1e9;
+        double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+        return String.format(Locale.ROOT, "%s,%s,%d,%.1f,%.3f,%.3f,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d",
+                name, returnPeriod, steps, flood, peakJdh, peakQth, latency.getMeanMillis(), latency.quantileMillis(0.9),
+                latency.getMaxMillis(), cpuSeconds, wallSeconds, evaluations, notConverged);
+    }
+
+    /**
+     * CPU time of this JVM including the in-process SWMM engine, 0 when the JVM does not report it;
+     * SWMM worker processes (-Dmpc.workers) are not included
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return 0;
+    }
+}